@@ -0,0 +1,59 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.sql.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ *   Allows another thread to abort the statement currently being executed
+ *   by a {@link JdbcTemplateExt} obtained from
+ *   {@link JdbcTemplateExt#withOptions(StatementOptions)}.
+ *   {@link #cancel()} calls {@link Statement#cancel()} on the running statement
+ *   and makes all further statements using this token fail before they start.
+ * </p>
+ * <p>
+ *   A token is meant to be used for one sequence of calls, such as one request.
+ *   This class is <b>thread-safe</b>.
+ * </p>
+ */
+public class CancellationToken {
+
+    private final AtomicReference<Statement> runningStatement = new AtomicReference<Statement>();
+    private volatile boolean cancelled;
+
+
+    /**
+     * Cancels the running statement (if any) and all statements to come.
+     * Errors reported by the driver while cancelling are ignored.
+     */
+    public void cancel() {
+        cancelled = true;
+        Statement statement = runningStatement.get();
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException ex) {
+                // The statement has most probably finished already
+            }
+        }
+    }
+
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+
+    void register(Statement statement) throws SQLException {
+        runningStatement.set(statement);
+        if (cancelled) {
+            runningStatement.compareAndSet(statement, null);
+            throw new SQLException("Statement execution was cancelled", "57014");
+        }
+    }
+
+
+    void unregister(Statement statement) {
+        runningStatement.compareAndSet(statement, null);
+    }
+}
@@ -0,0 +1,388 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.math.*;
+import java.util.*;
+
+/**
+ * <p>
+ *   A compact, column-oriented copy of a result set created by
+ *   {@link ColumnarResultSetExtractor}. Integral and temporal columns are held
+ *   in <code>long[]</code>, floating-point columns in <code>double[]</code>,
+ *   decimals too wide for both in <code>BigDecimal[]</code>
+ *   and all other columns as dictionary-encoded strings (<code>int[]</code> codes
+ *   into an array of distinct values). Except for the wide decimals, no object is held
+ *   per row, which makes it suitable for in-memory aggregation of large results.
+ * </p>
+ * <p>
+ *   SQL <code>NULL</code>s are tracked separately, see {@link Column#isNull(int)}.
+ *   The primitive value of a <code>NULL</code> cell is <code>0</code>
+ *   (or the code <code>-1</code> for strings).
+ * </p>
+ */
+public class ColumnarResult {
+
+    private final Column[] columns;
+    private final int rowCount;
+
+
+    ColumnarResult(Column[] columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+
+    public Column getColumn(int columnIndex) {
+        return columns[columnIndex];
+    }
+
+
+    /**
+     * @param name column name or label (case insensitive)
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public Column getColumn(String name) {
+        int index = findColumnIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No column " + name + " in the result");
+        }
+        return columns[index];
+    }
+
+
+    /**
+     * @return zero-based column index or -1 if not found
+     */
+    public int findColumnIndex(String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public LongColumn getLongColumn(String name) {
+        return (LongColumn) getColumn(name);
+    }
+
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return (DoubleColumn) getColumn(name);
+    }
+
+
+    public DecimalColumn getDecimalColumn(String name) {
+        return (DecimalColumn) getColumn(name);
+    }
+
+
+    public StringColumn getStringColumn(String name) {
+        return (StringColumn) getColumn(name);
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    public static abstract class Column {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final String name;
+        private BitSet nulls;
+        int size;
+
+
+        Column(String name) {
+            this.name = name;
+        }
+
+
+        public String getName() {
+            return name;
+        }
+
+
+        public int size() {
+            return size;
+        }
+
+
+        public boolean isNull(int rowIndex) {
+            checkIndex(rowIndex);
+            return nulls != null && nulls.get(rowIndex);
+        }
+
+
+        /**
+         * @return the value as a boxed object, <code>null</code> for SQL <code>NULL</code>
+         */
+        public abstract Object getObject(int rowIndex);
+
+
+        void markNull(int rowIndex) {
+            if (nulls == null) {
+                nulls = new BitSet();
+            }
+            nulls.set(rowIndex);
+        }
+
+
+        void checkIndex(int rowIndex) {
+            if (rowIndex < 0 || rowIndex >= size) {
+                throw new IndexOutOfBoundsException("Row number " + rowIndex + " was requested but the column has only " + size + " rows");
+            }
+        }
+
+
+        static int grow(int capacity) {
+            return capacity == 0 ? INITIAL_CAPACITY : capacity + (capacity >> 1);
+        }
+
+
+        abstract void trimToSize();
+    }
+
+
+    public static class LongColumn extends Column {
+
+        private long[] values = new long[0];
+
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+
+        public long get(int rowIndex) {
+            checkIndex(rowIndex);
+            return values[rowIndex];
+        }
+
+
+        @Override
+        public Object getObject(int rowIndex) {
+            return isNull(rowIndex) ? null : values[rowIndex];
+        }
+
+
+        /**
+         * @return the internal array (do not modify), its length equals {@link #size()}
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+
+        void add(long value, boolean isNull) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            if (isNull) {
+                markNull(size);
+            }
+            values[size++] = value;
+        }
+
+
+        @Override
+        void trimToSize() {
+            if (values.length != size) {
+                values = Arrays.copyOf(values, size);
+            }
+        }
+    }
+
+
+    public static class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+
+        public double get(int rowIndex) {
+            checkIndex(rowIndex);
+            return values[rowIndex];
+        }
+
+
+        @Override
+        public Object getObject(int rowIndex) {
+            return isNull(rowIndex) ? null : values[rowIndex];
+        }
+
+
+        /**
+         * @return the internal array (do not modify), its length equals {@link #size()}
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+
+        void add(double value, boolean isNull) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            if (isNull) {
+                markNull(size);
+            }
+            values[size++] = value;
+        }
+
+
+        @Override
+        void trimToSize() {
+            if (values.length != size) {
+                values = Arrays.copyOf(values, size);
+            }
+        }
+    }
+
+
+    public static class DecimalColumn extends Column {
+
+        private BigDecimal[] values = new BigDecimal[0];
+
+
+        DecimalColumn(String name) {
+            super(name);
+        }
+
+
+        /**
+         * @return the value, <code>null</code> for SQL <code>NULL</code>
+         */
+        public BigDecimal get(int rowIndex) {
+            checkIndex(rowIndex);
+            return values[rowIndex];
+        }
+
+
+        @Override
+        public Object getObject(int rowIndex) {
+            return get(rowIndex);
+        }
+
+
+        /**
+         * @return the internal array (do not modify), its length equals {@link #size()}
+         */
+        public BigDecimal[] getValues() {
+            return values;
+        }
+
+
+        void add(BigDecimal value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            if (value == null) {
+                markNull(size);
+            }
+            values[size++] = value;
+        }
+
+
+        @Override
+        void trimToSize() {
+            if (values.length != size) {
+                values = Arrays.copyOf(values, size);
+            }
+        }
+    }
+
+
+    public static class StringColumn extends Column {
+
+        private int[] codes = new int[0];
+        private final Map<String, Integer> codesByValue = new HashMap<String, Integer>();
+        private final List<String> dictionary = new ArrayList<String>();
+
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+
+        public String get(int rowIndex) {
+            int code = getCode(rowIndex);
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+
+        /**
+         * @return index into {@link #getDictionary()} or -1 for SQL <code>NULL</code>
+         */
+        public int getCode(int rowIndex) {
+            checkIndex(rowIndex);
+            return codes[rowIndex];
+        }
+
+
+        @Override
+        public Object getObject(int rowIndex) {
+            return get(rowIndex);
+        }
+
+
+        /**
+         * @return the internal array of codes (do not modify), its length equals {@link #size()}
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+
+        /**
+         * @return distinct values of the column in the order of their first appearance
+         */
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+
+        void add(String value) {
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length));
+            }
+            int code;
+            if (value == null) {
+                markNull(size);
+                code = -1;
+            } else {
+                Integer existingCode = codesByValue.get(value);
+                if (existingCode == null) {
+                    code = dictionary.size();
+                    dictionary.add(value);
+                    codesByValue.put(value, code);
+                } else {
+                    code = existingCode;
+                }
+            }
+            codes[size++] = code;
+        }
+
+
+        @Override
+        void trimToSize() {
+            if (codes.length != size) {
+                codes = Arrays.copyOf(codes, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.sql.*;
+import org.springframework.jdbc.core.*;
+import org.springframework.jdbc.support.*;
+
+/**
+ * <p>
+ *   Reads a whole result set into a {@link ColumnarResult}.
+ *   The column types are chosen from the result set metadata once:
+ * </p>
+ * <ul>
+ *   <li><code>BIT</code>, <code>BOOLEAN</code> and integral types are read by
+ *       {@link ResultSet#getLong(int)} (booleans as 0 or 1)</li>
+ *   <li><code>NUMERIC</code> and <code>DECIMAL</code> with scale 0 and precision up to 18
+ *       are read by {@link ResultSet#getLong(int)}</li>
+ *   <li><code>DATE</code>, <code>TIME</code> and <code>TIMESTAMP</code> are read
+ *       by {@link ResultSet#getTimestamp(int)} and stored as milliseconds since the epoch</li>
+ *   <li><code>REAL</code>, <code>FLOAT</code> and <code>DOUBLE</code>, as well as <code>NUMERIC</code>
+ *       and <code>DECIMAL</code> with a non-zero scale and precision up to 15
+ *       are read by {@link ResultSet#getDouble(int)}</li>
+ *   <li>other <code>NUMERIC</code> and <code>DECIMAL</code> columns (including those
+ *       of an unknown precision) are read by {@link ResultSet#getBigDecimal(int)},
+ *       so no digits are lost</li>
+ *   <li>everything else is read by {@link ResultSet#getString(int)} and dictionary-encoded</li>
+ * </ul>
+ * <p>
+ *   The driver creates a <code>Timestamp</code>, <code>BigDecimal</code> or <code>String</code>
+ *   for every cell of such columns, only the short-lived timestamps are not kept.
+ *   Instances are stateless and thread-safe.
+ * </p>
+ *
+ * @see JdbcTemplateExt#queryForColumns(String, Object...)
+ */
+public class ColumnarResultSetExtractor implements ResultSetExtractor<ColumnarResult> {
+
+    private static final int LONG = 0;
+    private static final int BOOLEAN = 1;
+    private static final int TIMESTAMP = 2;
+    private static final int DOUBLE = 3;
+    private static final int DECIMAL = 4;
+    private static final int STRING = 5;
+
+    /**
+     * Digits of a decimal which a double represents without loss
+     */
+    private static final int MAX_DOUBLE_PRECISION = 15;
+    private static final int MAX_LONG_PRECISION = 18;
+
+
+    @Override
+    public ColumnarResult extractData(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        int[] kinds = new int[columnCount];
+        ColumnarResult.Column[] columns = new ColumnarResult.Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            String name = JdbcUtils.lookupColumnName(metaData, i + 1);
+            kinds[i] = resolveKind(metaData, i + 1);
+            if (kinds[i] == DOUBLE) {
+                columns[i] = new ColumnarResult.DoubleColumn(name);
+            } else if (kinds[i] == DECIMAL) {
+                columns[i] = new ColumnarResult.DecimalColumn(name);
+            } else if (kinds[i] == STRING) {
+                columns[i] = new ColumnarResult.StringColumn(name);
+            } else {
+                columns[i] = new ColumnarResult.LongColumn(name);
+            }
+        }
+
+        int rowCount = 0;
+        while (rs.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                int index = i + 1;
+                switch (kinds[i]) {
+                    case LONG: {
+                        long value = rs.getLong(index);
+                        ((ColumnarResult.LongColumn) columns[i]).add(value, rs.wasNull());
+                        break;
+                    }
+                    case BOOLEAN: {
+                        long value = rs.getBoolean(index) ? 1L : 0L;
+                        ((ColumnarResult.LongColumn) columns[i]).add(value, rs.wasNull());
+                        break;
+                    }
+                    case TIMESTAMP: {
+                        Timestamp value = rs.getTimestamp(index);
+                        ((ColumnarResult.LongColumn) columns[i]).add(value == null ? 0L : value.getTime(), value == null);
+                        break;
+                    }
+                    case DOUBLE: {
+                        double value = rs.getDouble(index);
+                        ((ColumnarResult.DoubleColumn) columns[i]).add(value, rs.wasNull());
+                        break;
+                    }
+                    case DECIMAL: {
+                        ((ColumnarResult.DecimalColumn) columns[i]).add(rs.getBigDecimal(index));
+                        break;
+                    }
+                    default: {
+                        ((ColumnarResult.StringColumn) columns[i]).add(rs.getString(index));
+                        break;
+                    }
+                }
+            }
+            rowCount++;
+        }
+
+        for (ColumnarResult.Column column : columns) {
+            column.trimToSize();
+        }
+        return new ColumnarResult(columns, rowCount);
+    }
+
+
+    private static int resolveKind(ResultSetMetaData metaData, int index) throws SQLException {
+        switch (metaData.getColumnType(index)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return resolveDecimalKind(metaData.getPrecision(index), metaData.getScale(index));
+            default:
+                return STRING;
+        }
+    }
+
+
+    private static int resolveDecimalKind(int precision, int scale) {
+        if (precision <= 0) {
+            return DECIMAL;
+        }
+        if (scale == 0 && precision <= MAX_LONG_PRECISION) {
+            return LONG;
+        }
+        if (precision <= MAX_DOUBLE_PRECISION) {
+            return DOUBLE;
+        }
+        return DECIMAL;
+    }
+}
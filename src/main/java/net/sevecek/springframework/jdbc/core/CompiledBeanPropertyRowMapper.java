@@ -0,0 +1,262 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.ref.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.springframework.dao.*;
+import org.springframework.jdbc.core.*;
+import org.springframework.jdbc.support.*;
+import org.springframework.util.*;
+
+/**
+ * <p>
+ *   A faster alternative to {@link BeanPropertyRowMapper}.
+ *   The column-to-setter bindings are resolved once for every shape of result set
+ *   and kept as a mapping plan. Every row is then
+ *   read by column index and written through precompiled {@link MethodHandle}s,
+ *   without any metadata inspection or property lookups.
+ * </p>
+ * <p>
+ *   Column names are matched to bean properties the same way as in
+ *   {@link BeanPropertyRowMapper}: case-insensitively and with underscores
+ *   ignored (<code>FIRST_NAME</code> maps to <code>firstName</code>).
+ *   Columns without a matching writable property are skipped.
+ *   <code>null</code> values are not written to primitive properties.
+ * </p>
+ * <p>
+ *   The plan is looked up by the column labels of each result set
+ *   (keeping at most {@value #MAX_CACHED_PLANS} plans), so one instance serves all queries
+ *   of the bean class. As a {@link RowMapper}, it remembers the plan of the last result set,
+ *   so the labels are only read again for the first row of another result set.
+ *   The {@link #getResultSetExtractor() result set extractor} reads them once per result set.
+ *   The mapper is thread-safe and is meant to be cached per bean class,
+ *   see {@link JdbcTemplateExt#queryForBeans(String, Class, Object...)}.
+ * </p>
+ */
+public class CompiledBeanPropertyRowMapper<T> implements RowMapper<T> {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    /**
+     * The most plans cached by the column labels, the cache is cleared when it is full
+     */
+    public static final int MAX_CACHED_PLANS = 64;
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> beanClass;
+    private final MethodHandle constructor;
+    private final Map<String, PropertyDescriptor> writableProperties;
+    private final ConcurrentMap<String, MappingPlan> mappingPlansByColumns = new ConcurrentHashMap<String, MappingPlan>();
+    private final ResultSetExtractor<List<T>> resultSetExtractor = new ResultSetExtractor<List<T>>() {
+        @Override
+        public List<T> extractData(ResultSet rs) throws SQLException {
+            MappingPlan plan = getMappingPlan(rs.getMetaData());
+            List<T> result = new ArrayList<T>();
+            while (rs.next()) {
+                result.add(mapRow(rs, plan));
+            }
+            return result;
+        }
+    };
+
+    private volatile LastMappingPlan lastMappingPlan;
+
+
+    public CompiledBeanPropertyRowMapper(Class<T> beanClass) {
+        Assert.notNull(beanClass, "Bean class must not be null");
+        this.beanClass = beanClass;
+        this.constructor = compileConstructor(beanClass);
+        this.writableProperties = findWritableProperties(beanClass);
+    }
+
+
+    public Class<T> getBeanClass() {
+        return beanClass;
+    }
+
+
+    /**
+     * @return an extractor mapping all rows of a result set of any shape to the beans
+     */
+    public ResultSetExtractor<List<T>> getResultSetExtractor() {
+        return resultSetExtractor;
+    }
+
+
+    @Override
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        LastMappingPlan last = lastMappingPlan;
+        MappingPlan plan;
+        if (last != null && last.resultSet.get() == rs) {
+            plan = last.plan;
+        } else {
+            plan = getMappingPlan(rs.getMetaData());
+            lastMappingPlan = new LastMappingPlan(rs, plan);
+        }
+        return mapRow(rs, plan);
+    }
+
+
+    private T mapRow(ResultSet rs, MappingPlan plan) throws SQLException {
+        Object bean = instantiateBean();
+        for (int i = 0; i < plan.columnIndexes.length; i++) {
+            Object value = JdbcUtils.getResultSetValue(rs, plan.columnIndexes[i], plan.propertyTypes[i]);
+            if (value == null && plan.propertyTypes[i].isPrimitive()) {
+                continue;
+            }
+            try {
+                plan.setters[i].invokeExact(bean, value);
+            } catch (ClassCastException ex) {
+                throw new TypeMismatchDataAccessException("Cannot set property '" + plan.propertyNames[i]
+                        + "' of " + beanClass.getName() + " to value of type "
+                        + value.getClass().getName(), ex);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new DataRetrievalFailureException("Cannot set property '" + plan.propertyNames[i]
+                        + "' of " + beanClass.getName(), ex);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) bean;
+        return result;
+    }
+
+
+    private Object instantiateBean() {
+        try {
+            return constructor.invokeExact();
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new DataRetrievalFailureException("Cannot instantiate " + beanClass.getName(), ex);
+        }
+    }
+
+
+    private MappingPlan getMappingPlan(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        StringBuilder signature = new StringBuilder();
+        for (int index = 1; index <= columnCount; index++) {
+            columnNames[index - 1] = JdbcUtils.lookupColumnName(metaData, index);
+            signature.append(columnNames[index - 1]).append('\u0000');
+        }
+        String key = signature.toString();
+        MappingPlan plan = mappingPlansByColumns.get(key);
+        if (plan == null) {
+            plan = createMappingPlan(columnNames);
+            if (mappingPlansByColumns.size() >= MAX_CACHED_PLANS) {
+                mappingPlansByColumns.clear();
+            }
+            mappingPlansByColumns.put(key, plan);
+        }
+        return plan;
+    }
+
+
+    private MappingPlan createMappingPlan(String[] columnNames) {
+        int columnCount = columnNames.length;
+        List<Integer> columnIndexes = new ArrayList<Integer>(columnCount);
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>(columnCount);
+        for (int index = 1; index <= columnCount; index++) {
+            String columnName = columnNames[index - 1];
+            PropertyDescriptor property = writableProperties.get(normalizeName(columnName));
+            if (property != null) {
+                columnIndexes.add(index);
+                properties.add(property);
+            }
+        }
+
+        MappingPlan plan = new MappingPlan(columnIndexes.size());
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (int i = 0; i < plan.columnIndexes.length; i++) {
+            PropertyDescriptor property = properties.get(i);
+            plan.columnIndexes[i] = columnIndexes.get(i);
+            plan.propertyNames[i] = property.getName();
+            plan.propertyTypes[i] = property.getPropertyType();
+            try {
+                plan.setters[i] = lookup.unreflect(property.getWriteMethod()).asType(SETTER_TYPE);
+            } catch (IllegalAccessException ex) {
+                throw new InvalidDataAccessApiUsageException("Setter of property '" + property.getName()
+                        + "' of " + beanClass.getName() + " is not accessible", ex);
+            }
+        }
+        return plan;
+    }
+
+
+    private static MethodHandle compileConstructor(Class<?> beanClass) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findConstructor(beanClass, MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new InvalidDataAccessApiUsageException(beanClass.getName() + " must have a public no-arg constructor", ex);
+        }
+    }
+
+
+    private static Map<String, PropertyDescriptor> findWritableProperties(Class<?> beanClass) {
+        Map<String, PropertyDescriptor> result = new HashMap<String, PropertyDescriptor>();
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(beanClass).getPropertyDescriptors()) {
+                if (property.getWriteMethod() != null && property.getPropertyType() != null) {
+                    result.put(normalizeName(property.getName()), property);
+                }
+            }
+        } catch (IntrospectionException ex) {
+            throw new InvalidDataAccessApiUsageException("Cannot introspect " + beanClass.getName(), ex);
+        }
+        return result;
+    }
+
+
+    private static String normalizeName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch != '_' && ch != ' ') {
+                builder.append(Character.toLowerCase(ch));
+            }
+        }
+        return builder.toString();
+    }
+
+
+    private static class MappingPlan {
+
+        final int[] columnIndexes;
+        final String[] propertyNames;
+        final Class<?>[] propertyTypes;
+        final MethodHandle[] setters;
+
+
+        MappingPlan(int size) {
+            columnIndexes = new int[size];
+            propertyNames = new String[size];
+            propertyTypes = new Class<?>[size];
+            setters = new MethodHandle[size];
+        }
+    }
+
+
+    /**
+     * The plan of the result set mapped last, which is not kept reachable by the mapper
+     */
+    private static class LastMappingPlan {
+
+        final Reference<ResultSet> resultSet;
+        final MappingPlan plan;
+
+
+        LastMappingPlan(ResultSet resultSet, MappingPlan plan) {
+            this.resultSet = new WeakReference<ResultSet>(resultSet);
+            this.plan = plan;
+        }
+    }
+
+}
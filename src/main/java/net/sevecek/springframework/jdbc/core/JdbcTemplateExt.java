@@ -2,6 +2,7 @@ package net.sevecek.springframework.jdbc.core;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.sql.*;
 import org.springframework.dao.*;
 import org.springframework.jdbc.core.*;
@@ -10,6 +11,15 @@ import org.springframework.util.*;
 
 public class JdbcTemplateExt extends JdbcTemplate {
 
+    private ConcurrentMap<Class<?>, CompiledBeanPropertyRowMapper<?>> beanRowMapperCache =
+            new ConcurrentHashMap<Class<?>, CompiledBeanPropertyRowMapper<?>>();
+
+    private QueryResultCache queryResultCache;
+
+    private int maxStatementParameters = 2000;
+
+    private StatementOptions statementOptions;
+
     public JdbcTemplateExt() {
         super();
     }
@@ -25,6 +35,144 @@ public class JdbcTemplateExt extends JdbcTemplate {
     }
 
 
+    /**
+     * <p>
+     *   Returns a template which executes all its statements with the given options
+     * (query timeout, fetch size, max rows, deadline, cancellation token) on top of
+     * the settings of this template. It shares the DataSource, exception translator
+     * and caches with this template and is cheap to create, so it is meant
+     * to be used for a single call or a single request:
+     * </p>
+     * <pre>
+     * jdbcTemplate.withOptions(new StatementOptions().withQueryTimeout(5))
+     *         .insert("INSERT INTO person (name) VALUES (?)", keyHolder, name);
+     * </pre>
+     *
+     * @param options options for the statements, must not be <code>null</code>
+     * @see StatementOptions
+     * @see CancellationToken
+     */
+    public JdbcTemplateExt withOptions(StatementOptions options) {
+        Assert.notNull(options, "Statement options must not be null");
+        JdbcTemplateExt derived = new JdbcTemplateExt();
+        derived.setDataSource(getDataSource());
+        derived.setExceptionTranslator(getExceptionTranslator());
+        derived.setNativeJdbcExtractor(getNativeJdbcExtractor());
+        derived.setIgnoreWarnings(isIgnoreWarnings());
+        derived.setFetchSize(getFetchSize());
+        derived.setMaxRows(getMaxRows());
+        derived.setQueryTimeout(getQueryTimeout());
+        derived.setSkipResultsProcessing(isSkipResultsProcessing());
+        derived.setSkipUndeclaredResults(isSkipUndeclaredResults());
+        derived.setResultsMapCaseInsensitive(isResultsMapCaseInsensitive());
+        derived.beanRowMapperCache = beanRowMapperCache;
+        derived.queryResultCache = queryResultCache;
+        derived.maxStatementParameters = maxStatementParameters;
+        derived.statementOptions = options;
+        return derived;
+    }
+
+
+    /**
+     * @return the options set by {@link #withOptions(StatementOptions)} or <code>null</code>
+     */
+    public StatementOptions getStatementOptions() {
+        return statementOptions;
+    }
+
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        if (statementOptions != null) {
+            statementOptions.applyTo(stmt, getDataSource());
+        }
+    }
+
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) throws DataAccessException {
+        CancellationToken token = getCancellationToken();
+        return super.execute(token == null ? action : new UnregisteringStatementCallback<T>(action, token));
+    }
+
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, final PreparedStatementCallback<T> action) throws DataAccessException {
+        final CancellationToken token = getCancellationToken();
+        if (token == null) {
+            return super.execute(psc, action);
+        }
+        return super.execute(psc, new PreparedStatementCallback<T>() {
+            @Override
+            public T doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                try {
+                    return action.doInPreparedStatement(ps);
+                } finally {
+                    token.unregister(ps);
+                }
+            }
+        });
+    }
+
+
+    @Override
+    public <T> T execute(CallableStatementCreator csc, final CallableStatementCallback<T> action) throws DataAccessException {
+        final CancellationToken token = getCancellationToken();
+        if (token == null) {
+            return super.execute(csc, action);
+        }
+        return super.execute(csc, new CallableStatementCallback<T>() {
+            @Override
+            public T doInCallableStatement(CallableStatement cs) throws SQLException, DataAccessException {
+                try {
+                    return action.doInCallableStatement(cs);
+                } finally {
+                    token.unregister(cs);
+                }
+            }
+        });
+    }
+
+
+    private CancellationToken getCancellationToken() {
+        return (statementOptions == null ? null : statementOptions.getCancellationToken());
+    }
+
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+
+    public int getMaxStatementParameters() {
+        return maxStatementParameters;
+    }
+
+
+    /**
+     * Limits the number of bind parameters of a single statement created by
+     * <code>insertMultiRow(...)</code> and <code>upsertMultiRow(...)</code>.
+     * Default is 2000 which is safe for all common drivers
+     * (SQL Server allows 2100, PostgreSQL 32767, Oracle 65535).
+     */
+    public void setMaxStatementParameters(int maxStatementParameters) {
+        if (maxStatementParameters < 1) {
+            throw new IllegalArgumentException("Maximum statement parameters must be positive");
+        }
+        this.maxStatementParameters = maxStatementParameters;
+    }
+
+
+    /**
+     * Enables caching of results of the <code>queryCached(...)</code> methods.
+     * If not set (the default), those methods always go to the database.
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+
     /**
      * <p>
      *   This is a combination of JdbcTemplate.update(PreparedStatementCreator, KeyHolder)
@@ -134,6 +282,250 @@ public class JdbcTemplateExt extends JdbcTemplate {
     }
 
 
+    /**
+     * Issue a single-row insert statement for many rows at once by rewriting it
+     * to multi-row <code>INSERT ... VALUES (?, ?), (?, ?), ...</code> statements.
+     * Rows are split into chunks so that each statement stays under
+     * {@link #getMaxStatementParameters()} bind parameters.
+     * <p>
+     *   This is much faster than JDBC batching with drivers
+     * which don't rewrite batches themselves.
+     * </p>
+     *
+     * @param sql single-row insert, such as <code>INSERT INTO person (id, name) VALUES (?, ?)</code>
+     * @param batchArgs arguments of the individual rows
+     * @return the number of rows affected
+     * @throws DataAccessException if there is any problem issuing the insert
+     * @see MultiRowInsert
+     */
+    public int insertMultiRow(String sql, List<Object[]> batchArgs) throws DataAccessException {
+        return updateMultiRow(MultiRowInsert.parse(sql), batchArgs);
+    }
+
+
+    /**
+     * Insert the given rows or update them if a row with the same key already exists,
+     * using multi-row statements in the syntax of the given database.
+     * <p>
+     *   Rows with the same key are reduced to the last of them before the rows
+     *   are split into statements, because a single <code>ON CONFLICT</code>
+     *   or <code>MERGE</code> statement cannot affect one row twice.
+     *   The result is the same as if the rows were upserted one by one.
+     * </p>
+     *
+     * @param dialect syntax of the database
+     * @param table name of the table
+     * @param columns inserted columns, in the order of the row arguments
+     * @param keyColumns columns of the primary or unique key
+     * @param batchArgs arguments of the individual rows
+     * @return the number of rows affected (as reported by the driver)
+     * @throws DataAccessException if there is any problem issuing the upsert
+     */
+    public int upsertMultiRow(UpsertDialect dialect, String table, String[] columns, String[] keyColumns, List<Object[]> batchArgs) throws DataAccessException {
+        Assert.notNull(dialect, "Dialect must not be null");
+        String sql = dialect.createValidatedSingleRowSql(table, columns, keyColumns);
+        Assert.notNull(batchArgs, "Batch arguments must not be null");
+        return updateMultiRow(MultiRowInsert.parse(sql), removeDuplicateKeys(table, columns, keyColumns, batchArgs));
+    }
+
+
+    /**
+     * @return the rows with the last one kept of those with the same key, at its position
+     */
+    private static List<Object[]> removeDuplicateKeys(String table, String[] columns, String[] keyColumns, List<Object[]> batchArgs) {
+        int[] keyIndexes = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndexes[i] = -1;
+            for (int j = 0; j < columns.length; j++) {
+                if (columns[j].equalsIgnoreCase(keyColumns[i])) {
+                    keyIndexes[i] = j;
+                    break;
+                }
+            }
+            if (keyIndexes[i] < 0) {
+                throw new InvalidDataAccessApiUsageException("Key column " + keyColumns[i] + " is not among the upserted columns of " + table);
+            }
+        }
+        Map<List<Object>, Object[]> rowsByKey = new LinkedHashMap<List<Object>, Object[]>(batchArgs.size() * 2);
+        for (Object[] row : batchArgs) {
+            Object[] key = new Object[keyIndexes.length];
+            for (int i = 0; i < keyIndexes.length; i++) {
+                key[i] = row[keyIndexes[i]];
+            }
+            List<Object> keyList = Arrays.asList(key);
+            rowsByKey.remove(keyList);
+            rowsByKey.put(keyList, row);
+        }
+        if (rowsByKey.size() == batchArgs.size()) {
+            return batchArgs;
+        }
+        return new ArrayList<Object[]>(rowsByKey.values());
+    }
+
+
+    private int updateMultiRow(MultiRowInsert multiRowInsert, List<Object[]> batchArgs) {
+        Assert.notNull(batchArgs, "Batch arguments must not be null");
+        int rowsPerStatement = multiRowInsert.getMaxRowsPerStatement(maxStatementParameters);
+        String fullChunkSql = null;
+        int affectedRows = 0;
+        for (int from = 0; from < batchArgs.size(); from += rowsPerStatement) {
+            int to = Math.min(from + rowsPerStatement, batchArgs.size());
+            String sql;
+            if (to - from == rowsPerStatement) {
+                if (fullChunkSql == null) {
+                    fullChunkSql = multiRowInsert.createSql(rowsPerStatement);
+                }
+                sql = fullChunkSql;
+            } else {
+                sql = multiRowInsert.createSql(to - from);
+            }
+            affectedRows += update(sql, multiRowInsert.flattenArguments(batchArgs, from, to));
+        }
+        return affectedRows;
+    }
+
+
+    /**
+     * Query given SQL to create a prepared statement from SQL and a list
+     * of arguments to bind to the query, mapping each row to a bean
+     * of the given class.
+     * <p>
+     *   Unlike {@link BeanPropertyRowMapper}, the column-to-property bindings
+     * are resolved only once per (bean class, column labels) and cached in this template,
+     * so repeated queries skip the property matching. The cache does not depend on the SQL text,
+     * so SQL with inlined values does not make it grow.
+     * </p>
+     *
+     * @param sql SQL query to execute
+     * @param beanClass class of the beans to create for each row
+     * @param args arguments to bind to the query
+     * @return the result List, containing mapped beans
+     * @throws DataAccessException if the query fails
+     * @see CompiledBeanPropertyRowMapper
+     */
+    public <T> List<T> queryForBeans(String sql, Class<T> beanClass, Object... args) throws DataAccessException {
+        return query(sql, args, getBeanRowMapper(beanClass).getResultSetExtractor());
+    }
+
+
+    /**
+     * Query given SQL to create a prepared statement from SQL and a list
+     * of arguments to bind to the query, reading the whole result
+     * into primitive columnar buffers instead of per-row objects or maps.
+     *
+     * @param sql SQL query to execute
+     * @param args arguments to bind to the query
+     * @return the result in a column-oriented form
+     * @throws DataAccessException if the query fails
+     * @see ColumnarResultSetExtractor
+     */
+    public ColumnarResult queryForColumns(String sql, Object... args) throws DataAccessException {
+        return query(sql, args, new ColumnarResultSetExtractor());
+    }
+
+
+    /**
+     * Returns the cached {@link CompiledBeanPropertyRowMapper} for the given bean class,
+     * creating it on first use. Both the mapper and its {@link CompiledBeanPropertyRowMapper#getResultSetExtractor()
+     * result set extractor} work for any query.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompiledBeanPropertyRowMapper<T> getBeanRowMapper(Class<T> beanClass) {
+        Assert.notNull(beanClass, "Bean class must not be null");
+        CompiledBeanPropertyRowMapper<?> rowMapper = beanRowMapperCache.get(beanClass);
+        if (rowMapper == null) {
+            rowMapper = new CompiledBeanPropertyRowMapper<T>(beanClass);
+            CompiledBeanPropertyRowMapper<?> existing = beanRowMapperCache.putIfAbsent(beanClass, rowMapper);
+            if (existing != null) {
+                rowMapper = existing;
+            }
+        }
+        return (CompiledBeanPropertyRowMapper<T>) rowMapper;
+    }
+
+
+    /**
+     * Forgets all cached bean mapping plans, for example after a schema change.
+     */
+    public void clearBeanRowMapperCache() {
+        beanRowMapperCache.clear();
+    }
+
+
+    /**
+     * Query given SQL to create a prepared statement from SQL and a list
+     * of arguments to bind to the query, mapping each row to a Java object
+     * via a RowMapper. The result is read through the {@link QueryResultCache}
+     * (if one is set), so identical queries within its time-to-live
+     * do not reach the database. Results are cached per row mapper instance,
+     * so the mapper must be reused for the query, for example kept in a field,
+     * and must always map the rows the same way. A mapper created for every call
+     * (such as an anonymous class capturing local variables) is never served from the cache.
+     * Bean row mappers are the exception: the results of all mappers of one bean class
+     * (and, for {@link BeanPropertyRowMapper}, the same settings) are shared.
+     *
+     * @param sql SQL query to execute
+     * @param tableTags names of the tables the query reads from,
+     * used by {@link QueryResultCache#invalidateTag(String)}
+     * @param rowMapper object that will map one object per row
+     * @param args arguments to bind to the query
+     * @return the result List, containing mapped objects. It is unmodifiable
+     * when it comes from the cache
+     * @throws DataAccessException if the query fails
+     */
+    public <T> List<T> queryCached(String sql, String[] tableTags, RowMapper<T> rowMapper, Object... args) throws DataAccessException {
+        QueryResultCache cache = queryResultCache;
+        if (cache == null) {
+            return query(sql, args, rowMapper);
+        }
+        Object mappingKey = getMappingKey(rowMapper);
+        List<T> result = cache.get(sql, args, mappingKey);
+        if (result == null) {
+            long[] tagGenerations = cache.getTagGenerations(tableTags);
+            result = cache.put(sql, args, mappingKey, tableTags, tagGenerations, query(sql, args, rowMapper));
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the row mapper itself, or the mapped class and settings of the bean row mappers,
+     *         which map the rows only by them, so results of one query mapped differently are cached separately
+     */
+    private static Object getMappingKey(RowMapper<?> rowMapper) {
+        if (rowMapper instanceof BeanPropertyRowMapper) {
+            BeanPropertyRowMapper<?> beanRowMapper = (BeanPropertyRowMapper<?>) rowMapper;
+            return Arrays.asList(rowMapper.getClass(), beanRowMapper.getMappedClass(),
+                    beanRowMapper.isCheckFullyPopulated(), beanRowMapper.isPrimitivesDefaultedForNullValue());
+        }
+        if (rowMapper instanceof CompiledBeanPropertyRowMapper) {
+            return Arrays.asList(rowMapper.getClass(), ((CompiledBeanPropertyRowMapper<?>) rowMapper).getBeanClass());
+        }
+        return rowMapper;
+    }
+
+
+    /**
+     * Same as {@link #queryCached(String, String[], RowMapper, Object...)}
+     * for a query reading from a single table.
+     */
+    public <T> List<T> queryCached(String sql, String tableTag, RowMapper<T> rowMapper, Object... args) throws DataAccessException {
+        return queryCached(sql, new String[] {tableTag}, rowMapper, args);
+    }
+
+
+    /**
+     * Drops all cached query results read from the given table.
+     * Call it after modifying the table.
+     */
+    public void invalidateCachedQueries(String tableTag) {
+        QueryResultCache cache = queryResultCache;
+        if (cache != null) {
+            cache.invalidateTag(tableTag);
+        }
+    }
+
+
     /**
      * This is copied from SimplePreparedStatementCreator (JdbcTemplate source code).
      * If it changes, this needs too! <br/><br/>
@@ -163,4 +555,37 @@ public class JdbcTemplateExt extends JdbcTemplate {
         }
     }
 
+
+    /**
+     * Releases the statement from the {@link CancellationToken} once it has been processed,
+     * keeps the SQL available for the exception translation.
+     */
+    private static class UnregisteringStatementCallback<T> implements StatementCallback<T>, SqlProvider {
+
+        private final StatementCallback<T> action;
+        private final CancellationToken token;
+
+
+        public UnregisteringStatementCallback(StatementCallback<T> action, CancellationToken token) {
+            this.action = action;
+            this.token = token;
+        }
+
+
+        @Override
+        public T doInStatement(Statement stmt) throws SQLException, DataAccessException {
+            try {
+                return action.doInStatement(stmt);
+            } finally {
+                token.unregister(stmt);
+            }
+        }
+
+
+        @Override
+        public String getSql() {
+            return (action instanceof SqlProvider ? ((SqlProvider) action).getSql() : null);
+        }
+    }
+
 }
@@ -0,0 +1,190 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.util.*;
+import org.springframework.dao.*;
+import org.springframework.util.*;
+
+/**
+ * <p>
+ *   A single-row <code>INSERT ... VALUES (?, ?, ...)</code> template rewritten
+ *   to a multi-row <code>INSERT ... VALUES (?, ?), (?, ?), ...</code> statement.
+ *   Anything that follows the row (such as <code>ON CONFLICT DO NOTHING</code>)
+ *   is kept at the end of the statement. The same works for
+ *   <code>MERGE</code> statements with a single <code>VALUES</code> row,
+ *   see {@link UpsertDialect}.
+ * </p>
+ * <p>
+ *   Instances are immutable and thread-safe.
+ * </p>
+ *
+ * @see JdbcTemplateExt#insertMultiRow(String, List)
+ */
+public class MultiRowInsert {
+
+    private final String prefix;
+    private final String rowTemplate;
+    private final String suffix;
+    private final int parametersPerRow;
+
+
+    private MultiRowInsert(String prefix, String rowTemplate, String suffix, int parametersPerRow) {
+        this.prefix = prefix;
+        this.rowTemplate = rowTemplate;
+        this.suffix = suffix;
+        this.parametersPerRow = parametersPerRow;
+    }
+
+
+    /**
+     * @param sql single-row insert, such as <code>INSERT INTO person (id, name) VALUES (?, ?)</code>
+     * @throws InvalidDataAccessApiUsageException if the SQL is not a single-row <code>INSERT ... VALUES</code>
+     * with all bind parameters inside the row
+     */
+    public static MultiRowInsert parse(String sql) {
+        Assert.notNull(sql, "SQL must not be null");
+        int valuesEnd = findValuesKeywordEnd(sql);
+        if (valuesEnd < 0) {
+            throw new InvalidDataAccessApiUsageException("Missing VALUES in statement: " + sql);
+        }
+        int rowStart = skipWhitespace(sql, valuesEnd);
+        if (rowStart >= sql.length() || sql.charAt(rowStart) != '(') {
+            throw new InvalidDataAccessApiUsageException("Missing row after VALUES: " + sql);
+        }
+        int rowEnd = findClosingParenthesis(sql, rowStart);
+        if (rowEnd < 0) {
+            throw new InvalidDataAccessApiUsageException("Unbalanced parentheses in VALUES: " + sql);
+        }
+
+        String prefix = sql.substring(0, rowStart);
+        String rowTemplate = sql.substring(rowStart, rowEnd + 1);
+        String suffix = sql.substring(rowEnd + 1);
+        if (countParameters(prefix) > 0 || countParameters(suffix) > 0) {
+            throw new InvalidDataAccessApiUsageException("Bind parameters are only allowed inside the VALUES row: " + sql);
+        }
+        if (skipWhitespace(suffix, 0) < suffix.length() && suffix.charAt(skipWhitespace(suffix, 0)) == ',') {
+            throw new InvalidDataAccessApiUsageException("The INSERT already contains more than one row: " + sql);
+        }
+        return new MultiRowInsert(prefix, rowTemplate, suffix, countParameters(rowTemplate));
+    }
+
+
+    public int getParametersPerRow() {
+        return parametersPerRow;
+    }
+
+
+    /**
+     * @return the number of rows per statement that fits into the given limit of bind parameters
+     */
+    public int getMaxRowsPerStatement(int maxParameters) {
+        if (parametersPerRow == 0) {
+            return maxParameters;
+        }
+        return Math.max(1, maxParameters / parametersPerRow);
+    }
+
+
+    public String createSql(int rowCount) {
+        if (rowCount < 1) {
+            throw new IllegalArgumentException("Row count must be positive");
+        }
+        StringBuilder builder = new StringBuilder(prefix.length() + suffix.length()
+                + rowCount * (rowTemplate.length() + 2));
+        builder.append(prefix);
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(rowTemplate);
+        }
+        builder.append(suffix);
+        return builder.toString();
+    }
+
+
+    /**
+     * Flattens the arguments of the given rows into one array, in the order of
+     * the bind parameters of {@link #createSql(int)}.
+     */
+    public Object[] flattenArguments(List<Object[]> rows, int fromIndex, int toIndex) {
+        Object[] result = new Object[(toIndex - fromIndex) * parametersPerRow];
+        int position = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            Object[] rowArgs = rows.get(i);
+            int argCount = (rowArgs == null ? 0 : rowArgs.length);
+            if (argCount != parametersPerRow) {
+                throw new InvalidDataAccessApiUsageException("Row " + i + " has " + argCount
+                        + " arguments but " + parametersPerRow + " are expected");
+            }
+            System.arraycopy(rowArgs, 0, result, position, parametersPerRow);
+            position += parametersPerRow;
+        }
+        return result;
+    }
+
+
+    private static int findValuesKeywordEnd(String sql) {
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) quote = 0;
+            } else if (ch == '\'' || ch == '"' || ch == '`') {
+                quote = ch;
+            } else if (sql.regionMatches(true, i, "VALUES", 0, 6)
+                    && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))
+                    && (i + 6 == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(i + 6)))) {
+                return i + 6;
+            }
+        }
+        return -1;
+    }
+
+
+    private static int findClosingParenthesis(String sql, int openingIndex) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = openingIndex; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) quote = 0;
+            } else if (ch == '\'' || ch == '"' || ch == '`') {
+                quote = ch;
+            } else if (ch == '(') {
+                depth++;
+            } else if (ch == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    private static int skipWhitespace(String text, int index) {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+
+    private static int countParameters(String sql) {
+        int count = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) quote = 0;
+            } else if (ch == '\'' || ch == '"' || ch == '`') {
+                quote = ch;
+            } else if (ch == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
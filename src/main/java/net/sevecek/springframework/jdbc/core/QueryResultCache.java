@@ -0,0 +1,289 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.springframework.util.*;
+
+/**
+ * <p>
+ *   A read-through cache of query results for
+ *   {@link JdbcTemplateExt#queryCached(String, String[], org.springframework.jdbc.core.RowMapper, Object...)}.
+ *   It is meant for small reference tables which almost never change.
+ * </p>
+ * <p>
+ *   Entries are keyed by SQL, bind arguments and a key of the row mapping
+ *   (results of the same query mapped to different objects are cached separately),
+ *   and tagged by the names of the tables they were read from, so that all results of a table
+ *   can be dropped by {@link #invalidateTag(String)} after it is modified.
+ *   Every tag has a generation, which the invalidation increments. A loader reads
+ *   the generations by {@link #getTagGenerations(String[])} before it runs the query
+ *   and passes them to {@link #put(String, Object[], Object, String[], long[], List)},
+ *   which does not store the result if a tag was invalidated in the meantime,
+ *   so a query running during the invalidation cannot cache stale rows.
+ *   Every entry expires after the time-to-live. The weight of an entry is the number
+ *   of its rows plus one. When the total weight exceeds the maximum,
+ *   the least recently used entries are evicted.
+ * </p>
+ * <p>
+ *   This class is <b>thread-safe</b>. Cached lists are unmodifiable.
+ * </p>
+ */
+public class QueryResultCache {
+
+    private final long timeToLiveMillis;
+    private final long maximumWeight;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long totalWeight;
+    private final Map<String, Long> tagGenerations = new HashMap<String, Long>();
+    private long invalidateAllGeneration;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+
+    /**
+     * @param timeToLiveMillis how long an entry stays valid after it was loaded
+     * @param maximumWeight maximum total number of cached rows (plus one per entry)
+     */
+    public QueryResultCache(long timeToLiveMillis, long maximumWeight) {
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.maximumWeight = maximumWeight;
+    }
+
+
+    /**
+     * @param mappingKey distinguishes results of the same query mapped differently,
+     *                   such as the row mapper (compared by <code>equals()</code>)
+     * @return the cached result or <code>null</code> if there is none or it expired
+     */
+    public <T> List<T> get(String sql, Object[] args, Object mappingKey) {
+        Key key = new Key(sql, args, mappingKey);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                removeEntry(key);
+                entry = null;
+            }
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            List<T> result = (List<T>) entry.rows;
+            return result;
+        }
+    }
+
+
+    /**
+     * @return the current generations of the tags, to be passed to {@link #put(String, Object[], Object, String[], long[], List)}
+     */
+    public long[] getTagGenerations(String[] tableTags) {
+        String[] tags = (tableTags == null ? new String[0] : tableTags);
+        long[] generations = new long[tags.length + 1];
+        synchronized (entries) {
+            generations[0] = invalidateAllGeneration;
+            for (int i = 0; i < tags.length; i++) {
+                Long generation = tagGenerations.get(normalizeTag(tags[i]));
+                generations[i + 1] = (generation == null ? 0 : generation);
+            }
+        }
+        return generations;
+    }
+
+
+    /**
+     * Stores a result and returns its unmodifiable copy which is what the cache holds.
+     * The result is not stored (but still returned) if any of the tags was invalidated
+     * since the generations were read.
+     *
+     * @param mappingKey distinguishes results of the same query mapped differently, see {@link #get(String, Object[], Object)}
+     * @param tagGenerations the result of {@link #getTagGenerations(String[])} for the same tags, read before the query was run
+     */
+    public <T> List<T> put(String sql, Object[] args, Object mappingKey, String[] tableTags, long[] tagGenerations, List<T> rows) {
+        Assert.notNull(sql, "SQL must not be null");
+        Assert.notNull(rows, "Rows must not be null");
+        Assert.notNull(tagGenerations, "Tag generations must not be null");
+        List<T> cachedRows = Collections.unmodifiableList(new ArrayList<T>(rows));
+        Entry entry = new Entry(cachedRows,
+                tableTags == null ? new String[0] : tableTags.clone(),
+                System.currentTimeMillis() + timeToLiveMillis);
+        Key key = new Key(sql, args, mappingKey);
+        synchronized (entries) {
+            if (!Arrays.equals(getTagGenerations(entry.tableTags), tagGenerations)) {
+                return cachedRows;
+            }
+            removeEntry(key);
+            entries.put(key, entry);
+            totalWeight += entry.weight();
+            evictOverweightEntries();
+        }
+        return cachedRows;
+    }
+
+
+    /**
+     * Drops all cached results which were read from the given table.
+     */
+    public void invalidateTag(String tableTag) {
+        synchronized (entries) {
+            String tag = normalizeTag(tableTag);
+            Long generation = tagGenerations.get(tag);
+            tagGenerations.put(tag, generation == null ? 1 : generation + 1);
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (entry.hasTag(tableTag)) {
+                    totalWeight -= entry.weight();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidateAllGeneration++;
+            entries.clear();
+            totalWeight = 0;
+        }
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    public long getWeight() {
+        synchronized (entries) {
+            return totalWeight;
+        }
+    }
+
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    private static String normalizeTag(String tableTag) {
+        return tableTag.toLowerCase(Locale.ROOT);
+    }
+
+
+    private void removeEntry(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight();
+        }
+    }
+
+
+    private void evictOverweightEntries() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalWeight > maximumWeight && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            totalWeight -= eldest.weight();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "QueryResultCache[hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount()
+                + ", weight=" + getWeight() + "]";
+    }
+
+
+    private static class Key {
+
+        private final String sql;
+        private final Object[] args;
+        private final Object mappingKey;
+        private final int hashCode;
+
+
+        Key(String sql, Object[] args, Object mappingKey) {
+            this.sql = sql;
+            this.args = (args == null ? new Object[0] : args.clone());
+            this.mappingKey = mappingKey;
+            this.hashCode = (31 * sql.hashCode() + Arrays.deepHashCode(this.args)) * 31
+                    + (mappingKey == null ? 0 : mappingKey.hashCode());
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && sql.equals(other.sql)
+                    && Arrays.deepEquals(args, other.args)
+                    && (mappingKey == null ? other.mappingKey == null : mappingKey.equals(other.mappingKey));
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+
+    private static class Entry {
+
+        final List<?> rows;
+        final String[] tableTags;
+        final long expiresAt;
+
+
+        Entry(List<?> rows, String[] tableTags, long expiresAt) {
+            this.rows = rows;
+            this.tableTags = tableTags;
+            this.expiresAt = expiresAt;
+        }
+
+
+        long weight() {
+            return rows.size() + 1;
+        }
+
+
+        boolean hasTag(String tableTag) {
+            for (String tag : tableTags) {
+                if (tag.equalsIgnoreCase(tableTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package net.sevecek.springframework.jdbc.core;
+
+import java.sql.*;
+import javax.sql.*;
+import org.springframework.jdbc.datasource.*;
+import org.springframework.transaction.support.*;
+
+/**
+ * <p>
+ *   Execution options for individual calls of {@link JdbcTemplateExt}
+ *   overriding the template-wide settings. Use them through
+ *   {@link JdbcTemplateExt#withOptions(StatementOptions)}:
+ * </p>
+ * <pre>
+ * List&lt;Order&gt; orders = jdbcTemplate
+ *         .withOptions(new StatementOptions().withQueryTimeout(2).withFetchSize(500))
+ *         .queryForBeans("SELECT * FROM orders WHERE customer_id = ?", Order.class, customerId);
+ * </pre>
+ * <p>
+ *   A deadline is converted to the query timeout of every statement
+ *   right before it is executed, so the remaining time propagates
+ *   to the JDBC driver. The shortest of the timeout, the deadline and the remaining
+ *   time of a running Spring-managed transaction with a timeout applies.
+ * </p>
+ * <p>
+ *   Instances are immutable, every <code>with...</code> method returns a new copy.
+ * </p>
+ */
+public class StatementOptions {
+
+    private final int queryTimeout;
+    private final int fetchSize;
+    private final int maxRows;
+    private final long deadlineMillis;
+    private final CancellationToken cancellationToken;
+
+
+    public StatementOptions() {
+        this(-1, -1, -1, -1, null);
+    }
+
+
+    private StatementOptions(int queryTimeout, int fetchSize, int maxRows, long deadlineMillis, CancellationToken cancellationToken) {
+        this.queryTimeout = queryTimeout;
+        this.fetchSize = fetchSize;
+        this.maxRows = maxRows;
+        this.deadlineMillis = deadlineMillis;
+        this.cancellationToken = cancellationToken;
+    }
+
+
+    /**
+     * @param seconds query timeout in seconds, -1 means the template setting applies
+     */
+    public StatementOptions withQueryTimeout(int seconds) {
+        return new StatementOptions(seconds, fetchSize, maxRows, deadlineMillis, cancellationToken);
+    }
+
+
+    /**
+     * @param rows fetch size, -1 means the template setting applies
+     */
+    public StatementOptions withFetchSize(int rows) {
+        return new StatementOptions(queryTimeout, rows, maxRows, deadlineMillis, cancellationToken);
+    }
+
+
+    /**
+     * @param rows maximum number of rows, -1 means the template setting applies
+     */
+    public StatementOptions withMaxRows(int rows) {
+        return new StatementOptions(queryTimeout, fetchSize, rows, deadlineMillis, cancellationToken);
+    }
+
+
+    /**
+     * @param deadlineMillis time (as in {@link System#currentTimeMillis()}) by which the statements
+     * must finish, -1 means no deadline
+     */
+    public StatementOptions withDeadline(long deadlineMillis) {
+        return new StatementOptions(queryTimeout, fetchSize, maxRows, deadlineMillis, cancellationToken);
+    }
+
+
+    public StatementOptions withCancellationToken(CancellationToken token) {
+        return new StatementOptions(queryTimeout, fetchSize, maxRows, deadlineMillis, token);
+    }
+
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+
+    /**
+     * Applies the options to a statement which already has the template-wide
+     * settings applied.
+     */
+    void applyTo(Statement statement, DataSource dataSource) throws SQLException {
+        if (fetchSize > -1) {
+            statement.setFetchSize(fetchSize);
+        }
+        if (maxRows > -1) {
+            statement.setMaxRows(maxRows);
+        }
+
+        int timeout = queryTimeout;
+        if (deadlineMillis > -1) {
+            long remainingMillis = deadlineMillis - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                throw new SQLTimeoutException("Deadline for the statement has already passed", "57014");
+            }
+            int remainingSeconds = (int) Math.min(Integer.MAX_VALUE, (remainingMillis + 999) / 1000);
+            timeout = (timeout > 0 ? Math.min(timeout, remainingSeconds) : remainingSeconds);
+        }
+        if (timeout > 0) {
+            ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.getResource(dataSource);
+            if (holder != null && holder.hasTimeout()) {
+                timeout = Math.min(timeout, holder.getTimeToLiveInSeconds());
+            }
+            statement.setQueryTimeout(timeout);
+        }
+
+        if (cancellationToken != null) {
+            cancellationToken.register(statement);
+        }
+    }
+}
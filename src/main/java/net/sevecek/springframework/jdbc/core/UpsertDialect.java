@@ -0,0 +1,194 @@
+package net.sevecek.springframework.jdbc.core;
+
+import org.springframework.dao.*;
+
+/**
+ * <p>
+ *   Database-specific syntax of an insert-or-update (upsert) statement.
+ *   Every dialect creates a single-row template which
+ *   {@link MultiRowInsert} expands to any number of rows.
+ *   The rows of one statement must have distinct keys (most databases reject
+ *   a statement affecting one row twice), which
+ *   {@link JdbcTemplateExt#upsertMultiRow(UpsertDialect, String, String[], String[], java.util.List)} ensures.
+ * </p>
+ *
+ * @see JdbcTemplateExt#upsertMultiRow(UpsertDialect, String, String[], String[], java.util.List)
+ */
+public enum UpsertDialect {
+
+    /**
+     * <code>INSERT ... ON CONFLICT (...) DO UPDATE SET ...</code> (PostgreSQL 9.5+, SQLite 3.24+)
+     */
+    POSTGRESQL {
+        @Override
+        public String createSingleRowSql(String table, String[] columns, String[] keyColumns) {
+            StringBuilder builder = new StringBuilder();
+            appendInsertValues(builder, table, columns);
+            builder.append(" ON CONFLICT (");
+            appendList(builder, keyColumns, "", "");
+            builder.append(")");
+            String[] updatedColumns = nonKeyColumns(columns, keyColumns);
+            if (updatedColumns.length == 0) {
+                builder.append(" DO NOTHING");
+            } else {
+                builder.append(" DO UPDATE SET ");
+                for (int i = 0; i < updatedColumns.length; i++) {
+                    if (i > 0) builder.append(", ");
+                    builder.append(updatedColumns[i]).append(" = EXCLUDED.").append(updatedColumns[i]);
+                }
+            }
+            return builder.toString();
+        }
+    },
+
+    /**
+     * <code>INSERT ... ON DUPLICATE KEY UPDATE ...</code> (MySQL, MariaDB)
+     */
+    MYSQL {
+        @Override
+        public String createSingleRowSql(String table, String[] columns, String[] keyColumns) {
+            StringBuilder builder = new StringBuilder();
+            appendInsertValues(builder, table, columns);
+            builder.append(" ON DUPLICATE KEY UPDATE ");
+            String[] updatedColumns = nonKeyColumns(columns, keyColumns);
+            if (updatedColumns.length == 0) {
+                updatedColumns = new String[] {keyColumns[0]};
+            }
+            for (int i = 0; i < updatedColumns.length; i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(updatedColumns[i]).append(" = VALUES(").append(updatedColumns[i]).append(")");
+            }
+            return builder.toString();
+        }
+    },
+
+    /**
+     * <code>MERGE INTO ... KEY (...) VALUES ...</code> (H2)
+     */
+    H2 {
+        @Override
+        public String createSingleRowSql(String table, String[] columns, String[] keyColumns) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("MERGE INTO ").append(table).append(" (");
+            appendList(builder, columns, "", "");
+            builder.append(") KEY (");
+            appendList(builder, keyColumns, "", "");
+            builder.append(") VALUES (");
+            appendParameters(builder, columns.length);
+            builder.append(")");
+            return builder.toString();
+        }
+    },
+
+    /**
+     * SQL:2003 <code>MERGE INTO ... USING (VALUES ...)</code> (DB2, PostgreSQL 15+, HSQLDB)
+     */
+    MERGE {
+        @Override
+        public String createSingleRowSql(String table, String[] columns, String[] keyColumns) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("MERGE INTO ").append(table).append(" t USING (VALUES (");
+            appendParameters(builder, columns.length);
+            builder.append(")) AS s (");
+            appendList(builder, columns, "", "");
+            builder.append(") ON (");
+            for (int i = 0; i < keyColumns.length; i++) {
+                if (i > 0) builder.append(" AND ");
+                builder.append("t.").append(keyColumns[i]).append(" = s.").append(keyColumns[i]);
+            }
+            builder.append(")");
+            String[] updatedColumns = nonKeyColumns(columns, keyColumns);
+            if (updatedColumns.length > 0) {
+                builder.append(" WHEN MATCHED THEN UPDATE SET ");
+                for (int i = 0; i < updatedColumns.length; i++) {
+                    if (i > 0) builder.append(", ");
+                    builder.append(updatedColumns[i]).append(" = s.").append(updatedColumns[i]);
+                }
+            }
+            builder.append(" WHEN NOT MATCHED THEN INSERT (");
+            appendList(builder, columns, "", "");
+            builder.append(") VALUES (");
+            appendList(builder, columns, "s.", "");
+            builder.append(")");
+            return builder.toString();
+        }
+    },
+
+    /**
+     * Same as {@link #MERGE}, terminated by the semicolon SQL Server requires
+     */
+    SQL_SERVER {
+        @Override
+        public String createSingleRowSql(String table, String[] columns, String[] keyColumns) {
+            return MERGE.createSingleRowSql(table, columns, keyColumns) + ";";
+        }
+    };
+
+
+    /**
+     * @param table name of the table
+     * @param columns all inserted columns, in the order of the bind parameters
+     * @param keyColumns columns of the primary or unique key which decides between insert and update
+     */
+    public abstract String createSingleRowSql(String table, String[] columns, String[] keyColumns);
+
+
+    /**
+     * Same as {@link #createSingleRowSql(String, String[], String[])}, with the arguments validated.
+     */
+    public String createValidatedSingleRowSql(String table, String[] columns, String[] keyColumns) {
+        if (table == null || columns == null || columns.length == 0) {
+            throw new InvalidDataAccessApiUsageException("Table and columns must be specified for an upsert");
+        }
+        if (keyColumns == null || keyColumns.length == 0) {
+            throw new InvalidDataAccessApiUsageException("Key columns must be specified for an upsert into " + table);
+        }
+        return createSingleRowSql(table, columns, keyColumns);
+    }
+
+
+    private static void appendInsertValues(StringBuilder builder, String table, String[] columns) {
+        builder.append("INSERT INTO ").append(table).append(" (");
+        appendList(builder, columns, "", "");
+        builder.append(") VALUES (");
+        appendParameters(builder, columns.length);
+        builder.append(")");
+    }
+
+
+    private static void appendList(StringBuilder builder, String[] items, String itemPrefix, String itemSuffix) {
+        for (int i = 0; i < items.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(itemPrefix).append(items[i]).append(itemSuffix);
+        }
+    }
+
+
+    private static void appendParameters(StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append('?');
+        }
+    }
+
+
+    private static String[] nonKeyColumns(String[] columns, String[] keyColumns) {
+        String[] result = new String[columns.length];
+        int count = 0;
+        for (String column : columns) {
+            boolean isKey = false;
+            for (String keyColumn : keyColumns) {
+                if (keyColumn.equalsIgnoreCase(column)) {
+                    isKey = true;
+                    break;
+                }
+            }
+            if (!isKey) {
+                result[count++] = column;
+            }
+        }
+        String[] trimmed = new String[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
@@ -0,0 +1,178 @@
+package net.sevecek.tablemodel;
+
+import java.beans.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+/**
+ * <p>
+ * The introspection results of one bean class shared by all {@link BeanTableModel}s:
+ * property descriptors, compiled {@link ColumnAccessor}s and column names derived
+ * from the property names, as well as the accessors of property paths starting at the class.
+ * They are computed once per class, so that opening
+ * another table of the same beans costs no introspection at all.
+ * </p>
+ * <p>
+ * The metadata is stored in a {@link ClassValue}, so it does not keep the class
+ * or its class loader reachable. Instances are immutable except for the lazily
+ * derived column names and path accessors and thus thread-safe.
+ * </p>
+ */
+final class BeanClassMetadata {
+
+    private static final Pattern COLUMN_NAME_REGEX = Pattern.compile("(\\p{Lu}[^\\p{Lu}])");
+
+    private static final ClassValue<BeanClassMetadata> METADATA = new ClassValue<BeanClassMetadata>() {
+        @Override
+        protected BeanClassMetadata computeValue(Class<?> type) {
+            return new BeanClassMetadata(type);
+        }
+    };
+
+    private final PropertyDescriptor[] propertyDescriptors;
+    private final PropertyDescriptor[] propertyDescriptorsWithoutClass;
+    private final Map<String, PropertyDescriptor> propertyDescriptorsByName;
+    private final Map<String, ColumnAccessor> accessorsByName;
+    private final ConcurrentMap<String, ColumnAccessor> pathAccessors = new ConcurrentHashMap<String, ColumnAccessor>();
+    private final ConcurrentMap<String, String> columnNamesByPropertyName = new ConcurrentHashMap<String, String>();
+
+
+    private BeanClassMetadata(Class<?> beanClass) {
+        try {
+            propertyDescriptors = Introspector.getBeanInfo(beanClass).getPropertyDescriptors();
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException("Cannot introspect " + beanClass, e);
+        }
+        List<PropertyDescriptor> withoutClass = new ArrayList<PropertyDescriptor>(propertyDescriptors.length);
+        propertyDescriptorsByName = new HashMap<String, PropertyDescriptor>(propertyDescriptors.length * 4 / 3 + 1);
+        accessorsByName = new HashMap<String, ColumnAccessor>(propertyDescriptors.length * 4 / 3 + 1);
+        for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
+            if (!propertyDescriptor.getName().equals("class")) {
+                withoutClass.add(propertyDescriptor);
+            }
+            propertyDescriptorsByName.put(propertyDescriptor.getName(), propertyDescriptor);
+            accessorsByName.put(propertyDescriptor.getName(), ColumnAccessor.forProperty(propertyDescriptor));
+        }
+        propertyDescriptorsWithoutClass = withoutClass.toArray(new PropertyDescriptor[withoutClass.size()]);
+    }
+
+
+    static BeanClassMetadata forClass(Class<?> beanClass) {
+        return METADATA.get(beanClass);
+    }
+
+
+    /**
+     * @return the shared array, must not be modified
+     */
+    PropertyDescriptor[] getPropertyDescriptors(boolean excludeClassProperty) {
+        return excludeClassProperty ? propertyDescriptorsWithoutClass : propertyDescriptors;
+    }
+
+
+    /**
+     * @return the descriptor or <code>null</code> if the class has no such property
+     */
+    PropertyDescriptor getPropertyDescriptor(String propertyName) {
+        return propertyDescriptorsByName.get(propertyName);
+    }
+
+
+    /**
+     * @return the compiled accessor of the descriptor (a new one if the descriptor
+     *         is not a property of this class)
+     */
+    ColumnAccessor getAccessor(PropertyDescriptor propertyDescriptor) {
+        if (propertyDescriptorsByName.get(propertyDescriptor.getName()) == propertyDescriptor) {
+            return accessorsByName.get(propertyDescriptor.getName());
+        }
+        return ColumnAccessor.forProperty(propertyDescriptor);
+    }
+
+
+    /**
+     * Compiles a dotted property path such as <code>customer.address.city</code> into
+     * a null-safe chain of the accessors of the declared property types.
+     * If a property of the path does not exist or cannot be read,
+     * the accessor returns {@link ColumnAccessor#UNREADABLE_VALUE}.
+     */
+    ColumnAccessor getPathAccessor(String propertyPath) {
+        ColumnAccessor accessor = pathAccessors.get(propertyPath);
+        if (accessor == null) {
+            accessor = compilePath(propertyPath);
+            ColumnAccessor existing = pathAccessors.putIfAbsent(propertyPath, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+
+    private ColumnAccessor compilePath(String propertyPath) {
+        String[] propertyNames = propertyPath.split("\\.", -1);
+        ColumnAccessor[] accessors = new ColumnAccessor[propertyNames.length];
+        BeanClassMetadata metadata = this;
+        for (int i = 0; i < propertyNames.length; i++) {
+            PropertyDescriptor propertyDescriptor = (metadata == null ? null : metadata.getPropertyDescriptor(propertyNames[i]));
+            if (propertyDescriptor == null || propertyDescriptor.getReadMethod() == null) {
+                return ColumnAccessor.unreadable(propertyDescriptor == null ? null : propertyDescriptor.getPropertyType());
+            }
+            accessors[i] = metadata.getAccessor(propertyDescriptor);
+            Class<?> propertyType = propertyDescriptor.getPropertyType();
+            metadata = (propertyType == null || propertyType.isPrimitive() ? null : forClass(propertyType));
+        }
+        return ColumnAccessor.forPath(accessors);
+    }
+
+
+    /**
+     * @return the column name derived from the property name, cached for the properties of this class
+     */
+    String getColumnName(String propertyName) {
+        String columnName = columnNamesByPropertyName.get(propertyName);
+        if (columnName == null) {
+            columnName = constructColumnNameFromPropertyName(propertyName);
+            if (propertyDescriptorsByName.containsKey(propertyName)) {
+                columnNamesByPropertyName.putIfAbsent(propertyName, columnName);
+            }
+        }
+        return columnName;
+    }
+
+
+    static String constructColumnNameFromPropertyName(String propertyName) {
+        if (propertyName.indexOf('.') >= 0) {
+            // Property path
+            StringBuilder builder = new StringBuilder();
+            for (String name : propertyName.split("\\.")) {
+                if (!name.isEmpty()) {
+                    if (builder.length() > 0) {
+                        builder.append(' ');
+                    }
+                    builder.append(constructColumnNameFromPropertyName(name));
+                }
+            }
+            return builder.toString();
+        }
+        Matcher matcher = COLUMN_NAME_REGEX.matcher(propertyName);
+        propertyName = matcher.replaceAll(" $1");
+        if (propertyName.charAt(0) == ' ') {
+            propertyName = propertyName.substring(1);
+        }
+
+        String upperCase = propertyName.toUpperCase(Locale.getDefault());
+        StringBuilder builder = new StringBuilder();
+        builder.appendCodePoint(upperCase.codePointAt(0));
+
+        int pos;
+        if (Character.isHighSurrogate(propertyName.charAt(0)) && Character.isLowSurrogate(propertyName.charAt(1))) {
+            pos = 2;
+        } else {
+            pos = 1;
+        }
+        builder.append(propertyName, pos, propertyName.length());
+        return builder.toString();
+    }
+}
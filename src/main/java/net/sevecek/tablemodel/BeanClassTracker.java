@@ -0,0 +1,111 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Keeps track of the least common superclass of all beans in a table.
+ * It counts the beans of every concrete class, so adding a bean costs
+ * a hash lookup and, for a class not seen yet, one comparison of inheritance chains.
+ * The superclass is recomputed (from the distinct classes only, not from the rows)
+ * when the last bean of some class has been removed and the result is asked for.
+ * </p>
+ * <p>
+ * Inheritance chains are cached per class in a {@link ClassValue}, so they
+ * don't prevent classes from being unloaded.
+ * </p>
+ */
+class BeanClassTracker {
+
+    private static final ClassValue<Class<?>[]> INHERITANCE_CHAINS = new ClassValue<Class<?>[]>() {
+        @Override
+        protected Class<?>[] computeValue(Class<?> type) {
+            return resolveInheritanceChain(type);
+        }
+    };
+
+    private final Map<Class<?>, int[]> beanCountsByClass = new HashMap<Class<?>, int[]>();
+    private Class<?> commonSuperClass;
+    private boolean stale;
+
+
+    void beanAdded(Object bean) {
+        Class<?> beanClass = bean.getClass();
+        int[] count = beanCountsByClass.get(beanClass);
+        if (count != null) {
+            count[0]++;
+            return;
+        }
+        beanCountsByClass.put(beanClass, new int[] {1});
+        if (!stale) {
+            commonSuperClass = (commonSuperClass == null ? beanClass : leastCommonSuperClass(commonSuperClass, beanClass));
+        }
+    }
+
+
+    void beanRemoved(Object bean) {
+        Class<?> beanClass = bean.getClass();
+        int[] count = beanCountsByClass.get(beanClass);
+        if (count == null) {
+            return;
+        }
+        count[0]--;
+        if (count[0] <= 0) {
+            beanCountsByClass.remove(beanClass);
+            stale = true;
+        }
+    }
+
+
+    void reset(Collection<?> beans) {
+        beanCountsByClass.clear();
+        commonSuperClass = null;
+        stale = false;
+        for (Object bean : beans) {
+            beanAdded(bean);
+        }
+    }
+
+
+    /**
+     * @return the least common superclass of all beans or <code>null</code> if there are none
+     */
+    Class<?> getCommonSuperClass() {
+        if (stale) {
+            commonSuperClass = null;
+            for (Class<?> beanClass : beanCountsByClass.keySet()) {
+                commonSuperClass = (commonSuperClass == null ? beanClass : leastCommonSuperClass(commonSuperClass, beanClass));
+            }
+            stale = false;
+        }
+        return commonSuperClass;
+    }
+
+
+    static Class<?> leastCommonSuperClass(Class<?> firstClass, Class<?> secondClass) {
+        if (firstClass == secondClass) {
+            return firstClass;
+        }
+        Class<?>[] firstClassInheritanceChain = INHERITANCE_CHAINS.get(firstClass);
+        Class<?>[] secondClassInheritanceChain = INHERITANCE_CHAINS.get(secondClass);
+        Class<?> lastMatching = Object.class;
+        for (int i = 0; i < Math.min(firstClassInheritanceChain.length, secondClassInheritanceChain.length); i++) {
+            if (!firstClassInheritanceChain[i].equals(secondClassInheritanceChain[i])) {
+                break;
+            }
+            lastMatching = firstClassInheritanceChain[i];
+        }
+        return lastMatching;
+    }
+
+
+    private static Class<?>[] resolveInheritanceChain(Class<?> aClass) {
+        LinkedList<Class<?>> inheritanceChain = new LinkedList<Class<?>>();
+        while (aClass != null && !aClass.equals(Object.class)) {
+            inheritanceChain.addFirst(aClass);
+            aClass = aClass.getSuperclass();
+        }
+        inheritanceChain.addFirst(Object.class);
+        return inheritanceChain.toArray(new Class<?>[inheritanceChain.size()]);
+    }
+}
@@ -0,0 +1,10 @@
+package net.sevecek.tablemodel;
+
+/**
+ * Decides which beans are displayed by a {@link SortedBeanTableModel}.
+ */
+public interface BeanFilter<T> {
+
+    boolean include(T bean);
+
+}
@@ -0,0 +1,121 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A hash index from bean keys to row indexes kept by {@link BeanTableModel}.
+ * The keys are either extracted by a {@link KeyExtractor}
+ * or the beans themselves compared by identity.
+ * </p>
+ * <p>
+ * Rows below <code>validUpTo</code> are indexed correctly. Appends and removals
+ * only lower that mark and the rest is reindexed lazily by the next lookup,
+ * so a sequence of changes costs one pass over the affected tail at most.
+ * Keys are expected to be unique, with duplicate keys any of the rows may be found.
+ * </p>
+ */
+class BeanIndex {
+
+    private final KeyExtractor<Object> keyExtractor;
+    private final Map<Object, Integer> positions;
+    private int validUpTo;
+
+
+    @SuppressWarnings("unchecked")
+    BeanIndex(KeyExtractor<?> keyExtractor) {
+        this.keyExtractor = (KeyExtractor<Object>) keyExtractor;
+        if (keyExtractor == null) {
+            positions = new IdentityHashMap<Object, Integer>();
+        } else {
+            positions = new HashMap<Object, Integer>();
+        }
+    }
+
+
+    Object keyOf(Object bean) {
+        return keyExtractor == null ? bean : keyExtractor.extractKey(bean);
+    }
+
+
+    boolean sameKey(Object key, Object otherKey) {
+        if (keyExtractor == null) {
+            return key == otherKey;
+        }
+        return key == null ? otherKey == null : key.equals(otherKey);
+    }
+
+
+    int find(List<?> rows, Object bean) {
+        catchUp(rows);
+        Object key = keyOf(bean);
+        Integer position = positions.get(key);
+        if (position == null) {
+            return -1;
+        }
+        if (position < rows.size() && sameKey(key, keyOf(rows.get(position)))) {
+            return position;
+        }
+        positions.remove(key);
+        return -1;
+    }
+
+
+    void rowsInserted(int firstRow) {
+        validUpTo = Math.min(validUpTo, firstRow);
+    }
+
+
+    void rowRemoved(int rowIndex, Object removedBean) {
+        Object key = keyOf(removedBean);
+        Integer position = positions.get(key);
+        if (position != null && position == rowIndex) {
+            positions.remove(key);
+        }
+        validUpTo = Math.min(validUpTo, rowIndex);
+    }
+
+
+    void rowReplaced(int rowIndex, Object originalBean, Object newBean) {
+        if (rowIndex >= validUpTo) {
+            return;
+        }
+        Object originalKey = keyOf(originalBean);
+        Object newKey = keyOf(newBean);
+        if (sameKey(originalKey, newKey)) {
+            return;
+        }
+        Integer position = positions.get(originalKey);
+        if (position != null && position == rowIndex) {
+            positions.remove(originalKey);
+        }
+        Integer existing = positions.get(newKey);
+        if (existing == null || existing > rowIndex) {
+            positions.put(newKey, rowIndex);
+        }
+    }
+
+
+    void clear() {
+        positions.clear();
+        validUpTo = 0;
+    }
+
+
+    private void catchUp(List<?> rows) {
+        int size = rows.size();
+        if (validUpTo >= size) {
+            validUpTo = size;
+            return;
+        }
+        // Going backwards, so that the first of duplicate keys wins
+        for (int i = size - 1; i >= validUpTo; i--) {
+            Object key = keyOf(rows.get(i));
+            Integer existing = positions.get(key);
+            if (existing == null || existing >= validUpTo) {
+                positions.put(key, i);
+            }
+        }
+        validUpTo = size;
+    }
+}
@@ -0,0 +1,121 @@
+package net.sevecek.tablemodel;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import javax.swing.*;
+import net.sevecek.util.*;
+
+/**
+ * <p>
+ * Registers one {@link PropertyChangeListener} on every bean of a {@link BeanTableModel}
+ * which has public <code>addPropertyChangeListener(PropertyChangeListener)</code>
+ * and <code>removePropertyChangeListener(PropertyChangeListener)</code> methods.
+ * </p>
+ * <p>
+ * Property changes may come from any thread. They are collected per bean
+ * and handed over to the model on the EDT once per event-queue tick,
+ * so that any number of changes between two repaints costs one batch of cell updates.
+ * </p>
+ */
+class BeanPropertyObserver implements PropertyChangeListener {
+
+    private static final MethodType LISTENER_METHOD_TYPE = MethodType.methodType(void.class, Object.class, PropertyChangeListener.class);
+
+    private static final ClassValue<MethodHandle[]> LISTENER_METHODS = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            try {
+                Method addMethod = type.getMethod("addPropertyChangeListener", PropertyChangeListener.class);
+                Method removeMethod = type.getMethod("removePropertyChangeListener", PropertyChangeListener.class);
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                return new MethodHandle[] {
+                        lookup.unreflect(addMethod).asType(LISTENER_METHOD_TYPE),
+                        lookup.unreflect(removeMethod).asType(LISTENER_METHOD_TYPE)
+                };
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                return new MethodHandle[0];   // Bean doesn't support property change listeners
+            }
+        }
+    };
+
+    private final BeanTableModel<?> model;
+
+    private final Object lock = new Object();
+    private Map<Object, Set<String>> changedProperties = new IdentityHashMap<Object, Set<String>>();
+    private boolean flushScheduled;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+
+    BeanPropertyObserver(BeanTableModel<?> model) {
+        this.model = model;
+    }
+
+
+    void attach(Object bean) {
+        MethodHandle[] methods = LISTENER_METHODS.get(bean.getClass());
+        if (methods.length > 0) {
+            invoke(methods[0], bean);
+        }
+    }
+
+
+    void detach(Object bean) {
+        MethodHandle[] methods = LISTENER_METHODS.get(bean.getClass());
+        if (methods.length > 0) {
+            invoke(methods[1], bean);
+        }
+        synchronized (lock) {
+            changedProperties.remove(bean);
+        }
+    }
+
+
+    private void invoke(MethodHandle method, Object bean) {
+        try {
+            method.invokeExact(bean, (PropertyChangeListener) this);
+        } catch (Throwable ex) {
+            throw ExceptionUtils.rethrowAsUnchecked(ex);
+        }
+    }
+
+
+    @Override
+    public void propertyChange(PropertyChangeEvent event) {
+        Object bean = event.getSource();
+        synchronized (lock) {
+            Set<String> properties = changedProperties.get(bean);
+            if (properties == null) {
+                properties = new HashSet<String>(4);
+                changedProperties.put(bean, properties);
+            }
+            // null stands for "all properties may have changed"
+            properties.add(event.getPropertyName());
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        SwingUtilities.invokeLater(flushTask);
+    }
+
+
+    private void flush() {
+        Map<Object, Set<String>> changes;
+        synchronized (lock) {
+            changes = changedProperties;
+            changedProperties = new IdentityHashMap<Object, Set<String>>();
+            flushScheduled = false;
+        }
+        if (!changes.isEmpty()) {
+            model.beanPropertiesChanged(changes);
+        }
+    }
+}
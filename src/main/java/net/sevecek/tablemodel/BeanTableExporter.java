@@ -0,0 +1,423 @@
+package net.sevecek.tablemodel;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * Streams the rows of a {@link BeanTableModel} (or of its {@link SortedBeanTableModel} view)
+ * to a {@link Writer} as CSV (RFC 4180) or, with a tab separator, as TSV.
+ * Values are read by the compiled {@link ColumnAccessor}s of the model and copied
+ * into one reusable character buffer, which is written out whenever it is full.
+ * Integral values are formatted directly into the buffer, so no string is built per cell
+ * except for the values which are not strings or numbers themselves.
+ * </p>
+ * <p>
+ * Fields containing the separator, a quote or a line break are quoted,
+ * <code>null</code> is written as an empty field. All columns of the model are written
+ * unless {@link #setColumns(int...)} selects some of them.
+ * </p>
+ * <p>
+ * The export can be called on any thread. The model (or the view) is read on the EDT,
+ * where the column accessors and the beans of all rows are copied, and the calling thread
+ * waits for it. The values are then read from the beans and written on the calling thread,
+ * so calling it on a background thread keeps the EDT responsive, provided that the beans
+ * are not modified in the meantime. Rows of a model with a {@link RowSource}
+ * are read page by page on the calling thread, so even those can be exported without
+ * loading them all.
+ * </p>
+ * <p>
+ * The exporter reuses its buffer, so it must not be used by several threads at once.
+ * </p>
+ */
+public class BeanTableExporter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private char separator = ',';
+    private String lineSeparator = "\r\n";
+    private boolean writeHeader = true;
+    private int[] columns;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] digits = new char[20];
+    private final StringBuilder numberBuilder = new StringBuilder(32);
+    private Writer writer;
+    private int position;
+
+
+    /**
+     * @return an exporter of comma-separated values
+     */
+    public static BeanTableExporter csv() {
+        return new BeanTableExporter();
+    }
+
+
+    /**
+     * @return an exporter of tab-separated values
+     */
+    public static BeanTableExporter tsv() {
+        BeanTableExporter exporter = new BeanTableExporter();
+        exporter.setSeparator('\t');
+        return exporter;
+    }
+
+
+    public char getSeparator() {
+        return separator;
+    }
+
+
+    public void setSeparator(char separator) {
+        if (separator == '"' || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Quotes and line breaks cannot be used as separators");
+        }
+        this.separator = separator;
+    }
+
+
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+
+    /**
+     * @param lineSeparator "\r\n" by default, as required by RFC 4180
+     */
+    public void setLineSeparator(String lineSeparator) {
+        if (lineSeparator == null) throw new NullPointerException("The lineSeparator argument must not be null");
+        this.lineSeparator = lineSeparator;
+    }
+
+
+    public boolean isWriteHeader() {
+        return writeHeader;
+    }
+
+
+    /**
+     * @param writeHeader whether the first line contains the column names, <code>true</code> by default
+     */
+    public void setWriteHeader(boolean writeHeader) {
+        this.writeHeader = writeHeader;
+    }
+
+
+    /**
+     * @return the model indexes of the exported columns, or <code>null</code> for all columns
+     */
+    public int[] getColumns() {
+        return (columns == null ? null : columns.clone());
+    }
+
+
+    /**
+     * @param columns model indexes of the exported columns in the order they are written
+     *                (such as the visible columns of a JTable converted by
+     *                {@link javax.swing.JTable#convertColumnIndexToModel(int)}),
+     *                <code>null</code> (the default) exports all columns of the model
+     */
+    public void setColumns(int... columns) {
+        if (columns != null) {
+            for (int column : columns) {
+                if (column < 0) {
+                    throw new IllegalArgumentException("Column index must be 0 or more");
+                }
+            }
+        }
+        this.columns = (columns == null ? null : columns.clone());
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    /**
+     * Writes all rows of the model. The writer is flushed, but not closed.
+     */
+    public void export(BeanTableModel<?> model, Writer writer) throws IOException {
+        export(model, model, writer);
+    }
+
+
+    /**
+     * Writes the rows of the view in its current order (without the filtered out ones).
+     * The writer is flushed, but not closed.
+     */
+    public void export(SortedBeanTableModel<?> view, Writer writer) throws IOException {
+        export(view.getModel(), view, writer);
+    }
+
+
+    /**
+     * Writes all rows of the model to a new file (or replaces the file).
+     */
+    public void export(BeanTableModel<?> model, Path path, Charset charset) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, charset)) {
+            export(model, writer);
+        }
+    }
+
+
+    /**
+     * Writes the rows of the view to a new file (or replaces the file).
+     */
+    public void export(SortedBeanTableModel<?> view, Path path, Charset charset) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, charset)) {
+            export(view, writer);
+        }
+    }
+
+
+    /**
+     * @param rows either the model itself or a view of it
+     */
+    private void export(final BeanTableModel<?> model, Object rows, Writer writer) throws IOException {
+        if (writer == null) throw new NullPointerException("The writer argument must not be null");
+        final SortedBeanTableModel<?> view = (rows instanceof SortedBeanTableModel ? (SortedBeanTableModel<?>) rows : null);
+        final int[] exportedColumns = columns;
+        Snapshot snapshot;
+        if (EventQueue.isDispatchThread()) {
+            snapshot = new Snapshot(model, view, exportedColumns);
+        } else {
+            FutureTask<Snapshot> task = new FutureTask<Snapshot>(new Callable<Snapshot>() {
+                @Override
+                public Snapshot call() {
+                    return new Snapshot(model, view, exportedColumns);
+                }
+            });
+            EventQueue.invokeLater(task);
+            snapshot = awaitSnapshot(task);
+        }
+
+        int columnCount = snapshot.accessors.length;
+        ColumnAccessor[] accessors = snapshot.accessors;
+        this.writer = writer;
+        this.position = 0;
+        try {
+            if (writeHeader) {
+                for (int i = 0; i < columnCount; i++) {
+                    if (i > 0) {
+                        append(separator);
+                    }
+                    appendText(snapshot.columnNames[i]);
+                }
+                append(lineSeparator);
+            }
+            int rowCount = snapshot.getRowCount();
+            for (int row = 0; row < rowCount; row++) {
+                Object bean = snapshot.getBeanAt(row);
+                for (int i = 0; i < columnCount; i++) {
+                    if (i > 0) {
+                        append(separator);
+                    }
+                    if (accessors[i] == null) {
+                        // The bean class is not known
+                        appendValue(ColumnAccessor.UNREADABLE_VALUE);
+                    } else if (bean == null) {
+                        // A row the row source no longer returns
+                    } else if (accessors[i].isLongValued() && accessors[i].getValueType() != char.class) {
+                        appendLong(accessors[i].getLong(bean));
+                    } else if (accessors[i].getValueType() == double.class) {
+                        numberBuilder.setLength(0);
+                        appendText(numberBuilder.append(accessors[i].getDouble(bean)));
+                    } else {
+                        appendValue(accessors[i].getValue(bean));
+                    }
+                }
+                append(lineSeparator);
+            }
+            flushBuffer();
+            writer.flush();
+        } finally {
+            this.writer = null;
+        }
+    }
+
+
+    private static Snapshot awaitSnapshot(FutureTask<Snapshot> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the EDT");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    private void appendValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            appendLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            numberBuilder.setLength(0);
+            if (value instanceof Double) {
+                numberBuilder.append(((Double) value).doubleValue());
+            } else {
+                numberBuilder.append(((Float) value).floatValue());
+            }
+            appendText(numberBuilder);
+        } else if (value instanceof CharSequence) {
+            appendText((CharSequence) value);
+        } else {
+            appendText(value.toString());
+        }
+    }
+
+
+    private void appendLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+        boolean negative = (value < 0);
+        long remaining = (negative ? -value : value);
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + (int) (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            digits[--start] = '-';
+        }
+        ensureSpace(digits.length - start);
+        System.arraycopy(digits, start, buffer, position, digits.length - start);
+        position += digits.length - start;
+    }
+
+
+    /**
+     * Appends the text as a field, quoted if necessary.
+     */
+    private void appendText(CharSequence text) throws IOException {
+        int length = text.length();
+        boolean quoted = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == separator || c == '"' || c == '\r' || c == '\n') {
+                quoted = true;
+                break;
+            }
+        }
+        if (!quoted) {
+            append(text);
+            return;
+        }
+        append('"');
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+
+    private void append(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(length - i, buffer.length - position);
+            if (text instanceof String) {
+                ((String) text).getChars(i, i + count, buffer, position);
+            } else if (text instanceof StringBuilder) {
+                ((StringBuilder) text).getChars(i, i + count, buffer, position);
+            } else {
+                for (int j = 0; j < count; j++) {
+                    buffer[position + j] = text.charAt(i + j);
+                }
+            }
+            position += count;
+            i += count;
+        }
+    }
+
+
+    private void append(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = c;
+    }
+
+
+    private void ensureSpace(int count) throws IOException {
+        if (position + count > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+
+    private void flushBuffer() throws IOException {
+        writer.write(buffer, 0, position);
+        position = 0;
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    /**
+     * The columns and the beans of the exported rows, taken on the EDT.
+     */
+    private static class Snapshot {
+
+        private final String[] columnNames;
+        private final ColumnAccessor[] accessors;
+        private final Object[] beans;
+        private final PagedRowList<?> pagedRows;
+
+
+        Snapshot(BeanTableModel<?> model, SortedBeanTableModel<?> view, int[] columns) {
+            int columnCount = (columns == null ? model.getColumnCount() : columns.length);
+            columnNames = new String[columnCount];
+            accessors = new ColumnAccessor[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                int column = (columns == null ? i : columns[i]);
+                columnNames[i] = model.getColumnName(column);
+                accessors[i] = model.getColumnAccessor(column);
+            }
+            if (view != null) {
+                beans = new Object[view.getRowCount()];
+                for (int row = 0; row < beans.length; row++) {
+                    beans[row] = view.getBeanAt(row);
+                }
+                pagedRows = null;
+            } else if (model.getPagedRows() != null) {
+                beans = null;
+                pagedRows = model.getPagedRows();
+            } else {
+                beans = new Object[model.getRowCount()];
+                for (int row = 0; row < beans.length; row++) {
+                    beans[row] = model.getBeanAt(row);
+                }
+                pagedRows = null;
+            }
+        }
+
+
+        int getRowCount() {
+            return (beans != null ? beans.length : pagedRows.size());
+        }
+
+
+        Object getBeanAt(int row) {
+            return (beans != null ? beans[row] : pagedRows.getAndWait(row));
+        }
+    }
+}
@@ -1,20 +1,21 @@
 package net.sevecek.tablemodel;
 
 import java.beans.*;
-import java.lang.reflect.*;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+import javax.swing.event.*;
 import javax.swing.table.*;
 
 public class BeanTableModel<T> extends AbstractTableModel implements TableModel {
 
-    private static final Pattern COLUMN_NAME_REGEX = Pattern.compile("(\\p{Lu}[^\\p{Lu}])");
-
     private Class<?> beanClass;
     private boolean userBeanClass;
 
     private PropertyDescriptor[] propertyDescriptors;
     private PropertyDescriptor[] selectedPropertyDescriptors;
+    private ColumnAccessor[] selectedAccessors;
+    private Map<String, ColumnAccessor> computedColumns = new LinkedHashMap<String, ColumnAccessor>();
     private String[] selectedPropertyNames;
     private boolean userSelectedPropertyNames;
     private boolean excludeClassProperty = true;
@@ -22,7 +23,36 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     private String[] columnNames;
     private boolean userColumnNames;
 
-    private List rows = new LinkedList();
+    private List rows = new ArrayList();
+    private int rowsModificationCount;
+    private final PagedRowList.PageListener pageListener = new PagedRowList.PageListener() {
+        @Override
+        public void rowsLoaded(PagedRowList<?> list, List<?> firstPage) {
+            if (rows == list) {
+                rowsReplaced(firstPage);
+            }
+        }
+
+
+        @Override
+        public void pageLoaded(PagedRowList<?> list, int firstRow, int lastRow) {
+            if (rows == list) {
+                fireTableRowsUpdated(firstRow, lastRow);
+            }
+        }
+    };
+
+    private KeyExtractor<? super T> keyExtractor;
+    private boolean identityIndexed;
+    private BeanIndex beanIndex;
+    private BeanClassTracker beanClassTracker = new BeanClassTracker();
+
+    private BeanPropertyObserver beanPropertyObserver;
+    private Map<String, int[]> columnIndexesByPropertyName = Collections.emptyMap();
+    private int[] computedColumnIndexes = new int[0];
+
+    private int batchDepth;
+    private TableEventBuffer batchEvents = new TableEventBuffer();
 
     private PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
 
@@ -64,39 +94,36 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
             propertyDescriptors = null;
             return;
         }
-        try {
-            BeanInfo beanInfo = Introspector.getBeanInfo(beanClass);
-            PropertyDescriptor[] tmpPropertyDescriptors = beanInfo.getPropertyDescriptors();
-            if (excludeClassProperty) {
-                PropertyDescriptor[] correctPropertyDescriptors = new PropertyDescriptor[tmpPropertyDescriptors.length - 1];
-                for (int i = 0, j = 0; i < tmpPropertyDescriptors.length; i++) {
-                    if (!tmpPropertyDescriptors[i].getName().equals("class")) {
-                        correctPropertyDescriptors[j] = tmpPropertyDescriptors[i];
-                        j++;
-                    }
-                    propertyDescriptors = correctPropertyDescriptors;
-                }
-            } else {
-                propertyDescriptors = tmpPropertyDescriptors;
-            }
-        } catch (IntrospectionException e) {
-            throw new RuntimeException(e);   // TODO
-        }
+        propertyDescriptors = BeanClassMetadata.forClass(beanClass).getPropertyDescriptors(excludeClassProperty);
     }
 
 
     private void refreshSelectedProperties() {
+        refreshSelectedPropertyDescriptors();
+        refreshSelectedAccessors();
+    }
+
+
+    private void refreshSelectedPropertyDescriptors() {
         if (!userSelectedPropertyNames) {
             String[] oldValue = selectedPropertyNames;
             if (propertyDescriptors == null) {
                 selectedPropertyDescriptors = null;
                 selectedPropertyNames = null;
             } else {
-                selectedPropertyDescriptors = new PropertyDescriptor[propertyDescriptors.length];
-                selectedPropertyNames = new String[propertyDescriptors.length];
-                for (int i = 0; i < propertyDescriptors.length; i++) {
-                    selectedPropertyDescriptors[i] = propertyDescriptors[i];
-                    selectedPropertyNames[i] = propertyDescriptors[i].getName();
+                List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>(propertyDescriptors.length + computedColumns.size());
+                for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
+                    if (!computedColumns.containsKey(propertyDescriptor.getName())) {
+                        descriptors.add(propertyDescriptor);
+                    }
+                }
+                for (String computedColumnName : computedColumns.keySet()) {
+                    descriptors.add(findPropertyDescriptor(computedColumnName));
+                }
+                selectedPropertyDescriptors = descriptors.toArray(new PropertyDescriptor[descriptors.size()]);
+                selectedPropertyNames = new String[selectedPropertyDescriptors.length];
+                for (int i = 0; i < selectedPropertyDescriptors.length; i++) {
+                    selectedPropertyNames[i] = selectedPropertyDescriptors[i].getName();
                 }
             }
             propertyChangeSupport.firePropertyChange("propertyNames", oldValue, selectedPropertyNames);
@@ -111,12 +138,55 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     }
 
 
+    private void refreshSelectedAccessors() {
+        if (selectedPropertyDescriptors == null) {
+            selectedAccessors = null;
+            columnIndexesByPropertyName = Collections.emptyMap();
+            return;
+        }
+        BeanClassMetadata metadata = (beanClass == null ? null : BeanClassMetadata.forClass(beanClass));
+        selectedAccessors = new ColumnAccessor[selectedPropertyDescriptors.length];
+        Map<String, int[]> newColumnIndexes = new HashMap<String, int[]>();
+        int[] newComputedColumnIndexes = new int[0];
+        for (int i = 0; i < selectedPropertyDescriptors.length; i++) {
+            String propertyName = selectedPropertyDescriptors[i].getName();
+            ColumnAccessor computedColumn = computedColumns.get(propertyName);
+            if (computedColumn != null) {
+                selectedAccessors[i] = computedColumn;
+                // May depend on any property
+                newComputedColumnIndexes = Arrays.copyOf(newComputedColumnIndexes, newComputedColumnIndexes.length + 1);
+                newComputedColumnIndexes[newComputedColumnIndexes.length - 1] = i;
+                continue;
+            }
+            if (metadata == null) {
+                selectedAccessors[i] = ColumnAccessor.forProperty(selectedPropertyDescriptors[i]);
+            } else if (propertyName.indexOf('.') >= 0) {
+                selectedAccessors[i] = metadata.getPathAccessor(propertyName);
+                // Changes of nested beans are not observed, only of the first property of the path
+                propertyName = propertyName.substring(0, propertyName.indexOf('.'));
+            } else {
+                selectedAccessors[i] = metadata.getAccessor(selectedPropertyDescriptors[i]);
+            }
+            int[] existing = newColumnIndexes.get(propertyName);
+            if (existing == null) {
+                newColumnIndexes.put(propertyName, new int[] {i});
+            } else {
+                int[] extended = Arrays.copyOf(existing, existing.length + 1);
+                extended[existing.length] = i;
+                newColumnIndexes.put(propertyName, extended);
+            }
+        }
+        columnIndexesByPropertyName = newColumnIndexes;
+        computedColumnIndexes = newComputedColumnIndexes;
+    }
+
+
     private PropertyDescriptor findPropertyDescriptor(String propertyName) {
         if (propertyDescriptors != null) {
-            for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-                if (propertyDescriptor.getName().equals(propertyName)) {
-                    return propertyDescriptor;
-                }
+            PropertyDescriptor propertyDescriptor = BeanClassMetadata.forClass(beanClass).getPropertyDescriptor(propertyName);
+            if (propertyDescriptor != null
+                    && (!excludeClassProperty || !propertyName.equals("class"))) {
+                return propertyDescriptor;
             }
         }
         try {
@@ -132,36 +202,17 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
             if (selectedPropertyNames == null) {
                 columnNames = null;
             } else {
+                BeanClassMetadata metadata = (beanClass == null ? null : BeanClassMetadata.forClass(beanClass));
                 columnNames = new String[selectedPropertyNames.length];
                 for (int i = 0; i < selectedPropertyNames.length; i++) {
-                    columnNames[i] = constructColumnNameFromPropertyName(selectedPropertyNames[i]);
+                    columnNames[i] = (metadata == null
+                            ? BeanClassMetadata.constructColumnNameFromPropertyName(selectedPropertyNames[i])
+                            : metadata.getColumnName(selectedPropertyNames[i]));
                 }
             }
         }
     }
 
-
-    private String constructColumnNameFromPropertyName(String propertyName) {
-        Matcher matcher = COLUMN_NAME_REGEX.matcher(propertyName);
-        propertyName = matcher.replaceAll(" $1");
-        if (propertyName.charAt(0) == ' ') {
-            propertyName = propertyName.substring(1);
-        }
-
-        String upperCase = propertyName.toUpperCase(Locale.getDefault());
-        StringBuilder builder = new StringBuilder();
-        builder.appendCodePoint(upperCase.codePointAt(0));
-
-        int pos;
-        if (Character.isHighSurrogate(propertyName.charAt(0)) && Character.isLowSurrogate(propertyName.charAt(1))) {
-            pos = 2;
-        } else {
-            pos = 1;
-        }
-        builder.append(propertyName, pos, propertyName.length());
-        return builder.toString();
-    }
-
     //-------------------------------------------------------------------------
 
 
@@ -197,13 +248,183 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
 
     //-------------------------------------------------------------------------
 
-    @SuppressWarnings("unchecked")
+
+    /**
+     * <p>
+     * Adds (or replaces) a column computed from the whole bean. It is displayed after
+     * the properties of the bean class unless the property names are set explicitly,
+     * then it is displayed where its name is used in {@link #setPropertyNames(String[])}.
+     * A computed column hides a property of the same name.
+     * </p>
+     * <p>
+     * Besides computed columns, {@link #setPropertyNames(String[])} accepts dotted paths
+     * of nested properties, such as <code>customer.address.city</code>. They are compiled
+     * into a chain of accessors which returns <code>null</code> if any bean on the path is <code>null</code>.
+     * </p>
+     *
+     * @param accessor computes the value of the column, <code>null</code> removes the column
+     */
+    public void setComputedColumn(String propertyName, ColumnAccessor accessor) {
+        if (propertyName == null) throw new NullPointerException("The propertyName argument must not be null");
+        if (accessor == null) {
+            if (computedColumns.remove(propertyName) == null) return;   // No change
+        } else {
+            computedColumns.put(propertyName, accessor);
+        }
+        refreshSelectedProperties();
+        refreshColumnNames();
+
+        fireTableStructureChanged();
+    }
+
+
+    public Map<String, ColumnAccessor> getComputedColumns() {
+        return Collections.unmodifiableMap(computedColumns);
+    }
+
+    //-------------------------------------------------------------------------
+
+    /**
+     * Sets the beans to display. A {@link RandomAccess} list (such as {@link ArrayList})
+     * is used directly, so <code>addBean()</code>, <code>removeBean()</code> etc.
+     * modify it. Any other list (such as {@link LinkedList}) is copied
+     * into an {@link ArrayList} first, because the table reads rows by index
+     * and that must be O(1) to keep rendering and scrolling fast.
+     */
     public void setRows(List<T> beans) {
         if (beans == null) {
-            beans = new LinkedList();
+            beans = new ArrayList<T>();
+        } else if (!(beans instanceof RandomAccess)) {
+            beans = new ArrayList<T>(beans);
+        }
+        replaceRows(beans, beans);
+    }
+
+
+    /**
+     * Same as {@link #setRowSource(RowSource, int)} with pages of 100 rows.
+     */
+    public void setRowSource(RowSource<T> source) {
+        setRowSource(source, PagedRowList.DEFAULT_PAGE_SIZE);
+    }
+
+
+    /**
+     * <p>
+     * Displays the rows of the source without loading all of them. The total row count
+     * is read once and the rows are loaded in pages when the table asks for them.
+     * The most recently used pages are cached and the next page in the scroll direction
+     * is prefetched.
+     * </p>
+     * <p>
+     * The row count and the pages are read on a background thread of the model, one at a time,
+     * so this method returns at once and the EDT never waits for the source. The rows are empty
+     * until the row count and the first page arrive, then the data change is fired.
+     * A row of a page which is not loaded yet is <code>null</code> on the EDT until the page arrives
+     * and its rows are updated. A failure of the source is passed to the uncaught exception handler
+     * of the EDT. Must be called on the EDT.
+     * See {@link RowSource} for the threading contract of the source.
+     * </p>
+     * <p>
+     * The rows are read-only: methods modifying them throw {@link UnsupportedOperationException},
+     * call {@link #refreshRowSource()} after the data of the source changes.
+     * To avoid reading all rows, the bean class is detected from the first page only
+     * (set it explicitly if the rows are of different classes), {@link #findBean(Object)}
+     * only searches the cached pages and bean properties are not observed.
+     * </p>
+     *
+     * @param source the source, <code>null</code> clears the rows
+     */
+    public void setRowSource(RowSource<T> source, int pageSize) {
+        if (source == null) {
+            setRows(null);
+            return;
+        }
+        PagedRowList<T> pagedRows = new PagedRowList<T>(source, pageSize, PagedRowList.DEFAULT_CACHED_PAGES, pageListener);
+        replaceRows(pagedRows, Collections.emptyList());
+        pagedRows.load();
+    }
+
+
+    /**
+     * @return the source set by {@link #setRowSource(RowSource, int)}, or <code>null</code>
+     *         if the rows were set as a list
+     */
+    @SuppressWarnings("unchecked")
+    public RowSource<T> getRowSource() {
+        return hasRowSource() ? ((PagedRowList<T>) rows).getSource() : null;
+    }
+
+
+    /**
+     * Drops the cached pages of the row source and reads its row count again,
+     * as {@link #setRowSource(RowSource, int)} does. Must be called on the EDT.
+     */
+    @SuppressWarnings("unchecked")
+    public void refreshRowSource() {
+        if (!hasRowSource()) return;
+        PagedRowList<T> pagedRows = (PagedRowList<T>) rows;
+        setRowSource(pagedRows.getSource(), pagedRows.getPageSize());
+    }
+
+
+    /**
+     * @return the rows of the row source, or <code>null</code> if the rows were set as a list
+     */
+    @SuppressWarnings("unchecked")
+    PagedRowList<T> getPagedRows() {
+        return hasRowSource() ? (PagedRowList<T>) rows : null;
+    }
+
+
+    private boolean hasRowSource() {
+        return rows instanceof PagedRowList;
+    }
+
+
+    private void checkRowsModifiable() {
+        if (hasRowSource()) {
+            throw new UnsupportedOperationException("Rows of a RowSource cannot be modified, use refreshRowSource()");
         }
+    }
+
 
+    /**
+     * @param beanClassSample the beans the bean class is detected from
+     */
+    private void replaceRows(List<?> beans, Collection<?> beanClassSample) {
+        if (beanPropertyObserver != null) {
+            if (!hasRowSource()) {
+                for (Object oldBean : rows) {
+                    beanPropertyObserver.detach(oldBean);
+                }
+            }
+            if (!(beans instanceof PagedRowList)) {
+                for (Object newBean : beans) {
+                    beanPropertyObserver.attach(newBean);
+                }
+            }
+        }
+        if (hasRowSource()) {
+            ((PagedRowList<?>) rows).dispose();
+        }
         rows = beans;
+        rowsReplaced(beanClassSample);
+    }
+
+
+    /**
+     * Resets the state derived from the rows and fires the change, also when a row source
+     * has loaded its rows.
+     *
+     * @param beanClassSample the beans the bean class is detected from
+     */
+    private void rowsReplaced(Collection<?> beanClassSample) {
+        rowsModificationCount++;
+        beanClassTracker.reset(beanClassSample);
+        if (beanIndex != null) {
+            beanIndex.clear();
+        }
         if (!userBeanClass && !rows.isEmpty()) {
             Class<?> oldBeanClass = beanClass;
             setBeanClass(null);
@@ -214,46 +435,174 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     }
 
 
+    /**
+     * Same as {@link #loadRows(Callable)} for a list of beans which is already loaded.
+     */
+    public SwingWorker<List<T>, Void> setRowsInBackground(final List<T> beans) {
+        return loadRows(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return beans;
+            }
+        });
+    }
+
+
+    /**
+     * <p>
+     * Loads new rows without freezing the Swing EDT. The loader, the bean class detection,
+     * the introspection of the bean class and the comparison with the current rows
+     * (by the key extractor or by <code>equals()</code>) all run on a background thread
+     * of a {@link SwingWorker}. The EDT then only deletes, inserts and replaces
+     * the rows which differ and fires one event per block of adjacent changed rows.
+     * </p>
+     * <p>
+     * The rows are replaced as a whole (as by {@link #setRows(List)}) if the order
+     * of the remaining beans has changed, the bean class has changed, the rows
+     * have been modified in the meantime or there are too many changed blocks.
+     * Must be called on the EDT.
+     * </p>
+     * <p>
+     * A row is reported as updated only if its bean is replaced by another instance
+     * with the same key. The diff cannot see changes of a bean which was modified in place
+     * and loaded again, such beans have to be reported by {@link #fireTableRowsUpdated(int, int)}
+     * (or observed, see {@link #setObservingBeanProperties(boolean)}).
+     * </p>
+     * <p>
+     * An exception thrown by the loader is passed to the uncaught exception handler
+     * of the EDT (such as {@link net.sevecek.util.swing.SwingExceptionHandler})
+     * and the rows are left unchanged.
+     * </p>
+     *
+     * @param loader loads the new rows, called on a background thread
+     * @return the already started worker, its <code>get()</code> returns the new rows
+     */
+    public SwingWorker<List<T>, Void> loadRows(final Callable<? extends List<T>> loader) {
+        if (loader == null) throw new NullPointerException("loadRows(null)");
+        // The rows of a row source are replaced as a whole, they are not read for the diff
+        final Object[] oldRows = (hasRowSource() ? null : rows.toArray());
+        final int expectedModificationCount = rowsModificationCount;
+        final KeyExtractor<? super T> diffKeyExtractor = keyExtractor;
+
+        SwingWorker<List<T>, Void> worker = new SwingWorker<List<T>, Void>() {
+
+            private BeanClassTracker newBeanClassTracker;
+            private RowsDiff diff;
+
+
+            @Override
+            protected List<T> doInBackground() throws Exception {
+                List<T> newRows = loader.call();
+                if (newRows == null) {
+                    newRows = new ArrayList<T>();
+                } else if (!(newRows instanceof RandomAccess)) {
+                    newRows = new ArrayList<T>(newRows);
+                }
+                newBeanClassTracker = new BeanClassTracker();
+                newBeanClassTracker.reset(newRows);
+                Class<?> newBeanClass = newBeanClassTracker.getCommonSuperClass();
+                if (newBeanClass != null) {
+                    // Introspects the bean class for setBeanClass() on the EDT
+                    BeanClassMetadata.forClass(newBeanClass);
+                }
+                diff = (oldRows == null ? null : new RowsDiff(oldRows, newRows, diffKeyExtractor));
+                return newRows;
+            }
+
+
+            @Override
+            protected void done() {
+                List<T> newRows;
+                try {
+                    newRows = get();
+                } catch (ExecutionException ex) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex.getCause());
+                    return;
+                } catch (InterruptedException | CancellationException ex) {
+                    return;
+                }
+                applyLoadedRows(newRows, newBeanClassTracker, diff, expectedModificationCount);
+            }
+        };
+        worker.execute();
+        return worker;
+    }
+
+
     @SuppressWarnings("unchecked")
-    private Class<T> detectBeanClassFromList() {
-        if (rows.size() == 0) {
-            return null;
+    private void applyLoadedRows(List<T> newRows, BeanClassTracker newBeanClassTracker, RowsDiff diff, int expectedModificationCount) {
+        boolean beanClassChanges = !userBeanClass && newBeanClassTracker.getCommonSuperClass() != beanClass;
+        if (diff == null
+                || beanClassChanges
+                || rowsModificationCount != expectedModificationCount
+                || !diff.isApplicable()
+                || diff.getBlockCount() > TableEventBuffer.MAX_EVENTS) {
+            setRows(newRows);
+            return;
         }
-        Iterator<?> iterator = rows.iterator();
-        Object firstBean = iterator.next();
-        Class<?> foundClass = firstBean.getClass();
-        while (iterator.hasNext()) {
-            Object otherBean = iterator.next();
-            if (!otherBean.getClass().isAssignableFrom(foundClass)) {
-                foundClass = leastCommonSuperClass(otherBean.getClass(), foundClass);
+
+        List<Object> rowList = rows;
+        rowsModificationCount++;
+        beanClassTracker = newBeanClassTracker;
+        if (beanIndex != null) {
+            beanIndex.clear();
+        }
+
+        List<int[]> deletedBlocks = diff.getDeletedBlocks();
+        for (int i = deletedBlocks.size() - 1; i >= 0; i--) {
+            int[] block = deletedBlocks.get(i);
+            List<Object> deletedRows = rowList.subList(block[0], block[1] + 1);
+            if (beanPropertyObserver != null) {
+                for (Object bean : deletedRows) {
+                    beanPropertyObserver.detach(bean);
+                }
+            }
+            deletedRows.clear();
+            fireTableRowsDeleted(block[0], block[1]);
+        }
+        for (int[] block : diff.getInsertedBlocks()) {
+            List<T> insertedRows = newRows.subList(block[0], block[1] + 1);
+            if (beanPropertyObserver != null) {
+                for (Object bean : insertedRows) {
+                    beanPropertyObserver.attach(bean);
+                }
+            }
+            rowList.addAll(block[0], insertedRows);
+            fireTableRowsInserted(block[0], block[1]);
+        }
+        for (int[] block : diff.getUpdatedBlocks()) {
+            for (int i = block[0]; i <= block[1]; i++) {
+                Object originalBean = rowList.set(i, newRows.get(i));
+                if (beanPropertyObserver != null) {
+                    beanPropertyObserver.detach(originalBean);
+                    beanPropertyObserver.attach(newRows.get(i));
+                }
             }
+            fireTableRowsUpdated(block[0], block[1]);
         }
-        return (Class<T>) foundClass;
     }
 
 
-    private Class<?> leastCommonSuperClass(Class<?> firstClass, Class<?> secondClass) {
-        Class[] firstClassInheritanceChain = resolveInheritanceChain(firstClass);
-        Class[] secondClassInheritanceChain = resolveInheritanceChain(secondClass);
-        Class lastMatching = Object.class;
-        for (int i = 0; i < Math.min(firstClassInheritanceChain.length, secondClassInheritanceChain.length); i++) {
-            if (!firstClassInheritanceChain[i].equals(secondClassInheritanceChain[i])) {
-                break;
-            }
-            lastMatching = firstClassInheritanceChain[i];
+    private void beanEntered(Object bean) {
+        beanClassTracker.beanAdded(bean);
+        if (beanPropertyObserver != null) {
+            beanPropertyObserver.attach(bean);
         }
-        return lastMatching;
     }
 
 
-    private Class[] resolveInheritanceChain(Class<?> aClass) {
-        LinkedList<Class> inheritanceChain = new LinkedList<Class>();
-        while (!aClass.equals(Object.class)) {
-            inheritanceChain.addFirst(aClass);
-            aClass = aClass.getSuperclass();
+    private void beanLeft(Object bean) {
+        beanClassTracker.beanRemoved(bean);
+        if (beanPropertyObserver != null) {
+            beanPropertyObserver.detach(bean);
         }
-        inheritanceChain.addFirst(Object.class);
-        return inheritanceChain.toArray(new Class[inheritanceChain.size()]);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Class<T> detectBeanClassFromList() {
+        return (Class<T>) beanClassTracker.getCommonSuperClass();
     }
 
     //-------------------------------------------------------------------------
@@ -317,10 +666,10 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     @Override
     public Class<?> getColumnClass(int columnIndex) {
         validateColumnIndex(columnIndex);
-        if (selectedPropertyDescriptors == null) {
+        if (selectedAccessors == null) {
             return Object.class;
         } else {
-            return selectedPropertyDescriptors[columnIndex].getPropertyType();
+            return selectedAccessors[columnIndex].getValueType();
         }
     }
 
@@ -353,8 +702,20 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     }
 
 
+    /**
+     * Returns the row index of the bean or -1 if it is not in the table.
+     * Without an index the rows are scanned and compared by <code>equals()</code>.
+     * With an index (see {@link #setKeyExtractor(KeyExtractor)}
+     * and {@link #setIdentityIndexed(boolean)}) this is a hash lookup.
+     */
     public int findBean(T bean) {
         if (bean == null) throw new NullPointerException("findBean(null)");
+        if (hasRowSource()) {
+            return ((PagedRowList<?>) rows).indexOfCached(bean, keyExtractor);
+        }
+        if (beanIndex != null) {
+            return beanIndex.find(rows, bean);
+        }
         Iterator<?> iterator = rows.iterator();
         for (int i = 0; iterator.hasNext(); i++) {
             if (bean.equals(iterator.next())) {
@@ -368,7 +729,10 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     @SuppressWarnings("unchecked")
     public void addBean(T bean) {
         if (bean == null) throw new NullPointerException("addBean(null)");
+        checkRowsModifiable();
         rows.add(bean);
+        rowsModificationCount++;
+        beanEntered(bean);
         if (!userBeanClass) {
             Class<?> oldBeanClass = beanClass;
             setBeanClass(null);
@@ -393,7 +757,13 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
 
     @SuppressWarnings("unchecked")
     public T removeBean(int rowIndex) {
+        checkRowsModifiable();
         Object originalBean = rows.remove(rowIndex);
+        rowsModificationCount++;
+        beanLeft(originalBean);
+        if (beanIndex != null) {
+            beanIndex.rowRemoved(rowIndex, originalBean);
+        }
         if (!userBeanClass) {
             Class<?> oldBeanClass = beanClass;
             setBeanClass(null);
@@ -417,9 +787,16 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     @SuppressWarnings("unchecked")
     public void updateBean(int rowIndex, T bean) {
         if (bean == null) throw new NullPointerException("updateBean(" + rowIndex + ", null)");
+        checkRowsModifiable();
         Object originalBean = rows.get(rowIndex);
         if (bean != originalBean) {
             rows.set(rowIndex, bean);
+            rowsModificationCount++;
+            beanEntered(bean);
+            beanLeft(originalBean);
+            if (beanIndex != null) {
+                beanIndex.rowReplaced(rowIndex, originalBean, bean);
+            }
             if (!userBeanClass) {
                 Class<?> oldBeanClass = beanClass;
                 setBeanClass(null);
@@ -430,6 +807,175 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
         fireTableRowsUpdated(rowIndex, rowIndex);
     }
 
+    /**
+     * Appends all beans and fires a single insert event
+     * (or a structure change if the bean class changes).
+     */
+    @SuppressWarnings("unchecked")
+    public void addBeans(Collection<? extends T> beans) {
+        if (beans == null) throw new NullPointerException("addBeans(null)");
+        checkRowsModifiable();
+        for (T bean : beans) {
+            if (bean == null) throw new NullPointerException("addBeans() with a null bean");
+        }
+        if (beans.isEmpty()) return;
+
+        int firstRow = rows.size();
+        rows.addAll(beans);
+        rowsModificationCount++;
+        for (T bean : beans) {
+            beanEntered(bean);
+        }
+        if (!userBeanClass) {
+            Class<?> oldBeanClass = beanClass;
+            setBeanClass(null);
+            // The method above triggers fireTableStructureChanged()
+            if (oldBeanClass != beanClass) return;
+        }
+        fireTableRowsInserted(firstRow, rows.size() - 1);
+    }
+
+
+    /**
+     * Removes all beans which are in the table (see {@link #findBean(Object)}).
+     * Each block of adjacent rows is removed at once and reported by one delete event.
+     * If there are many blocks, the rows are compacted in a single pass
+     * and a single data change is fired instead.
+     *
+     * @return the number of removed rows
+     */
+    public int removeBeans(Collection<? extends T> beans) {
+        if (beans == null) throw new NullPointerException("removeBeans(null)");
+        checkRowsModifiable();
+        BitSet removedRows = new BitSet(rows.size());
+        for (T bean : beans) {
+            if (bean == null) throw new NullPointerException("removeBeans() with a null bean");
+            int rowIndex = findBean(bean);
+            if (rowIndex > -1) {
+                removedRows.set(rowIndex);
+            }
+        }
+        return removeRows(removedRows);
+    }
+
+
+    /**
+     * Same as {@link #removeBeans(Collection)} for the rows which are already found.
+     */
+    @SuppressWarnings("unchecked")
+    int removeRows(BitSet removedRows) {
+        checkRowsModifiable();
+        if (removedRows.isEmpty()) return 0;
+
+        List<Object> rowList = rows;
+        rowsModificationCount++;
+        for (int i = removedRows.nextSetBit(0); i >= 0; i = removedRows.nextSetBit(i + 1)) {
+            Object bean = rowList.get(i);
+            beanLeft(bean);
+            if (beanIndex != null) {
+                beanIndex.rowRemoved(i, bean);
+            }
+        }
+        int removedCount = removedRows.cardinality();
+        boolean beanClassChanges = !userBeanClass && beanClassTracker.getCommonSuperClass() != beanClass;
+
+        int blockCount = 0;
+        for (int i = removedRows.nextSetBit(0); i >= 0; i = removedRows.nextSetBit(removedRows.nextClearBit(i))) {
+            blockCount++;
+        }
+        if (beanClassChanges || blockCount > TableEventBuffer.MAX_EVENTS) {
+            int keptCount = 0;
+            for (int i = 0; i < rowList.size(); i++) {
+                if (!removedRows.get(i)) {
+                    if (keptCount != i) {
+                        rowList.set(keptCount, rowList.get(i));
+                    }
+                    keptCount++;
+                }
+            }
+            rowList.subList(keptCount, rowList.size()).clear();
+            if (beanClassChanges) {
+                setBeanClass(null);
+                // The method above triggers fireTableStructureChanged()
+            } else {
+                fireTableDataChanged();
+            }
+            return removedCount;
+        }
+
+        // From the end, so that the row numbers of the remaining blocks stay valid
+        int last = removedRows.length() - 1;
+        while (last >= 0) {
+            int first = removedRows.previousClearBit(last) + 1;
+            rowList.subList(first, last + 1).clear();
+            fireTableRowsDeleted(first, last);
+            last = removedRows.previousSetBit(first - 1);
+        }
+        return removedCount;
+    }
+
+
+    /**
+     * Calls {@link #updateBean(Object)} for every bean and fires the coalesced events
+     * at the end, see {@link #batch(Runnable)}.
+     */
+    public void updateBeans(final Collection<? extends T> beans) {
+        if (beans == null) throw new NullPointerException("updateBeans(null)");
+        batch(new Runnable() {
+            @Override
+            public void run() {
+                for (T bean : beans) {
+                    updateBean(bean);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * <p>
+     * Runs the changes and fires the events of all of them at the end,
+     * reduced to the smallest set of events: adjacent inserted, deleted or updated rows
+     * are merged into one range event. Inserts or deletes which cannot be merged into one
+     * event result in a single {@link #fireTableDataChanged()}, while a large number
+     * of updates results in a single update event of the spanned rows, which keeps
+     * the selection of a JTable. Batches can be nested, the events are fired
+     * when the outermost one ends (also when it ends by an exception).
+     * </p>
+     * <p>
+     * Listeners are not notified about the intermediate states, so the changes
+     * must not read the model through a JTable in the meantime.
+     * </p>
+     */
+    public void batch(Runnable changes) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+            if (batchDepth == 0 && !batchEvents.isEmpty()) {
+                for (TableModelEvent event : batchEvents.drain(this)) {
+                    super.fireTableChanged(event);
+                }
+            }
+        }
+    }
+
+
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+
+
+    @Override
+    public void fireTableChanged(TableModelEvent event) {
+        if (batchDepth > 0) {
+            batchEvents.add(event);
+        } else {
+            super.fireTableChanged(event);
+        }
+    }
+
     //----------------------------------------------------------------
 
 
@@ -444,21 +990,231 @@ public class BeanTableModel<T> extends AbstractTableModel implements TableModel
     public Object getValueAt(int rowIndex, int columnIndex) {
         Object bean = getBeanAt(rowIndex);
         validateColumnIndex(columnIndex);
-        if (selectedPropertyDescriptors == null) {
-            return "---";
-        }
-        PropertyDescriptor property = selectedPropertyDescriptors[columnIndex];
-        Method readMethod = property.getReadMethod();
-        if (readMethod != null) {
-            try {
-                return readMethod.invoke(bean);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException(ex);  // TODO
-            } catch (InvocationTargetException ex) {
-                throw new RuntimeException(ex);  // TODO
+        if (selectedAccessors == null) {
+            return ColumnAccessor.UNREADABLE_VALUE;
+        }
+        if (bean == null) {
+            return null;    // A row the row source no longer returns
+        }
+        return selectedAccessors[columnIndex].getValue(bean);
+    }
+
+
+    /**
+     * Same as {@link #getValueAt(int, int)} for numeric columns, but without boxing
+     * if the property has a primitive integral type.
+     */
+    public long getLongValueAt(int rowIndex, int columnIndex) {
+        Object bean = getBeanAt(rowIndex);
+        validateColumnIndex(columnIndex);
+        if (selectedAccessors == null || bean == null) {
+            return 0L;
+        }
+        return selectedAccessors[columnIndex].getLong(bean);
+    }
+
+
+    /**
+     * Same as {@link #getValueAt(int, int)} for numeric columns, but without boxing
+     * if the property has a primitive numeric type.
+     */
+    public double getDoubleValueAt(int rowIndex, int columnIndex) {
+        Object bean = getBeanAt(rowIndex);
+        validateColumnIndex(columnIndex);
+        if (selectedAccessors == null || bean == null) {
+            return 0.0;
+        }
+        return selectedAccessors[columnIndex].getDouble(bean);
+    }
+
+
+    /**
+     * @return the compiled accessor reading the given column from a bean,
+     *         or <code>null</code> if the bean class is not known yet
+     */
+    public ColumnAccessor getColumnAccessor(int columnIndex) {
+        validateColumnIndex(columnIndex);
+        if (selectedAccessors == null) {
+            return null;
+        }
+        return selectedAccessors[columnIndex];
+    }
+
+    //-------------------------------------------------------------------------
+
+    public KeyExtractor<? super T> getKeyExtractor() {
+        return keyExtractor;
+    }
+
+
+    /**
+     * Makes {@link #findBean(Object)}, {@link #updateBean(Object)} and {@link #removeBean(Object)}
+     * look beans up by the extracted key in a hash index instead of scanning all rows.
+     * A bean is then found also by a different instance with the same key, which allows
+     * replacing rows by freshly loaded beans. The index is kept in sync with all changes
+     * made through this model. <code>null</code> switches the key-based index off.
+     */
+    public void setKeyExtractor(KeyExtractor<? super T> newKeyExtractor) {
+        KeyExtractor<? super T> oldValue = keyExtractor;
+        keyExtractor = newKeyExtractor;
+        refreshBeanIndex();
+        propertyChangeSupport.firePropertyChange("keyExtractor", oldValue, newKeyExtractor);
+    }
+
+
+    public boolean isIdentityIndexed() {
+        return identityIndexed;
+    }
+
+
+    /**
+     * Makes {@link #findBean(Object)}, {@link #updateBean(Object)} and {@link #removeBean(Object)}
+     * look beans up by identity (<code>==</code>) in a hash index instead of scanning all rows
+     * with <code>equals()</code>. Ignored if a key extractor is set.
+     */
+    public void setIdentityIndexed(boolean value) {
+        boolean oldValue = identityIndexed;
+        if (oldValue == value) return;      // No change
+        identityIndexed = value;
+        refreshBeanIndex();
+        propertyChangeSupport.firePropertyChange("identityIndexed", oldValue, value);
+    }
+
+
+    public boolean isObservingBeanProperties() {
+        return beanPropertyObserver != null;
+    }
+
+
+    /**
+     * <p>
+     * When switched on, the model registers a {@link PropertyChangeListener} on every bean
+     * which supports it (has public <code>addPropertyChangeListener(PropertyChangeListener)</code>
+     * and <code>removePropertyChangeListener(PropertyChangeListener)</code>) and repaints
+     * just the cells of the changed properties, so <code>updateBean()</code> is not needed.
+     * Changes may be fired from any thread; all changes until the next EDT tick
+     * are applied together as one batch of cell updates.
+     * </p>
+     * <p>
+     * Beans of the table then hold a reference to the model, so switch it off
+     * (or call <code>setRows(null)</code>) before discarding the model
+     * if the beans live longer.
+     * </p>
+     */
+    public void setObservingBeanProperties(boolean value) {
+        boolean oldValue = (beanPropertyObserver != null);
+        if (oldValue == value) return;      // No change
+        if (value) {
+            beanPropertyObserver = new BeanPropertyObserver(this);
+            if (!hasRowSource()) {
+                for (Object bean : rows) {
+                    beanPropertyObserver.attach(bean);
+                }
+            }
+        } else {
+            if (!hasRowSource()) {
+                for (Object bean : rows) {
+                    beanPropertyObserver.detach(bean);
+                }
+            }
+            beanPropertyObserver = null;
+        }
+        propertyChangeSupport.firePropertyChange("observingBeanProperties", oldValue, value);
+    }
+
+
+    /**
+     * Called by {@link BeanPropertyObserver} on the EDT. The changed cells are
+     * sorted by column and row, so that adjacent cells are merged into range events.
+     *
+     * @param changedProperties the changed property names by the beans, compared by identity
+     */
+    void beanPropertiesChanged(Map<Object, Set<String>> changedProperties) {
+        Map<Object, Integer> rowIndexes = findObservedRows(changedProperties.keySet());
+        long[] changedCells = new long[changedProperties.size() * 2];
+        int count = 0;
+        for (Map.Entry<Object, Set<String>> entry : changedProperties.entrySet()) {
+            Integer rowIndex = rowIndexes.get(entry.getKey());
+            if (rowIndex == null) {
+                continue;
+            }
+            for (String propertyName : entry.getValue()) {
+                int[] columnIndexes = (propertyName == null
+                        ? new int[] {TableModelEvent.ALL_COLUMNS}
+                        : columnIndexesByPropertyName.get(propertyName));
+                if (columnIndexes == null) {
+                    continue;
+                }
+                for (int columnIndex : columnIndexes) {
+                    changedCells = addChangedCell(changedCells, count++, columnIndex, rowIndex);
+                }
+            }
+            for (int columnIndex : computedColumnIndexes) {
+                changedCells = addChangedCell(changedCells, count++, columnIndex, rowIndex);
+            }
+        }
+        Arrays.sort(changedCells, 0, count);
+
+        final long[] sortedCells = changedCells;
+        final int cellCount = count;
+        batch(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < cellCount; i++) {
+                    int columnIndex = (int) (sortedCells[i] >>> 32) - 1;
+                    int rowIndex = (int) sortedCells[i];
+                    fireTableChanged(new TableModelEvent(BeanTableModel.this, rowIndex, rowIndex, columnIndex));
+                }
             }
+        });
+    }
+
+
+    /**
+     * @param beans a set comparing the beans by identity
+     * @return the rows of the beans which are in the table, by the beans compared by identity
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Integer> findObservedRows(Set<Object> beans) {
+        Map<Object, Integer> result = new IdentityHashMap<Object, Integer>(beans.size());
+        if (beanIndex != null) {
+            for (Object bean : beans) {
+                int rowIndex = findBean((T) bean);
+                if (rowIndex > -1) {
+                    result.put(bean, rowIndex);
+                }
+            }
+            return result;
+        }
+        // One pass over the rows instead of one per bean, looking for the instances
+        // which fired the events rather than for equal beans
+        int rowCount = rows.size();
+        for (int rowIndex = 0; rowIndex < rowCount && result.size() < beans.size(); rowIndex++) {
+            Object bean = rows.get(rowIndex);
+            if (beans.contains(bean) && !result.containsKey(bean)) {
+                result.put(bean, rowIndex);
+            }
+        }
+        return result;
+    }
+
+
+    private static long[] addChangedCell(long[] changedCells, int count, int columnIndex, int rowIndex) {
+        if (count == changedCells.length) {
+            changedCells = Arrays.copyOf(changedCells, count * 2 + 2);
+        }
+        changedCells[count] = ((long) (columnIndex + 1) << 32) | rowIndex;
+        return changedCells;
+    }
+
+
+    private void refreshBeanIndex() {
+        if (keyExtractor != null) {
+            beanIndex = new BeanIndex(keyExtractor);
+        } else if (identityIndexed) {
+            beanIndex = new BeanIndex(null);
         } else {
-            return "---";
+            beanIndex = null;
         }
     }
 
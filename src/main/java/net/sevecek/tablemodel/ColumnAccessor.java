@@ -0,0 +1,326 @@
+package net.sevecek.tablemodel;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import net.sevecek.util.*;
+
+/**
+ * <p>
+ *   Reads the value of one column from a bean.
+ *   Accessors of bean properties are compiled into {@link MethodHandle}s once,
+ *   so reading a cell is a direct call without reflection or access checks.
+ * </p>
+ * <p>
+ *   Besides {@link #getValue(Object)}, numeric columns can be read
+ *   without boxing through {@link #getLong(Object)} and {@link #getDouble(Object)}
+ *   (see {@link #isLongValued()} and {@link #isDoubleValued()}).
+ * </p>
+ * <p>
+ *   Subclasses can be used as computed columns of a {@link BeanTableModel},
+ *   see {@link BeanTableModel#setComputedColumn(String, ColumnAccessor)}.
+ * </p>
+ */
+public abstract class ColumnAccessor {
+
+    private static final MethodType OBJECT_GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType LONG_GETTER_TYPE = MethodType.methodType(long.class, Object.class);
+    private static final MethodType DOUBLE_GETTER_TYPE = MethodType.methodType(double.class, Object.class);
+
+    /**
+     * The value displayed for properties which cannot be read
+     */
+    public static final String UNREADABLE_VALUE = "---";
+
+
+    /**
+     * Compiles an accessor for the read method of the property.
+     * If there is no read method, the accessor returns {@link #UNREADABLE_VALUE}.
+     */
+    public static ColumnAccessor forProperty(PropertyDescriptor property) {
+        Method readMethod = property.getReadMethod();
+        if (readMethod == null) {
+            return new UnreadableAccessor(property.getPropertyType());
+        }
+        try {
+            MethodHandle getter = MethodHandles.publicLookup().unreflect(readMethod);
+            return new MethodHandleAccessor(getter, readMethod.getReturnType());
+        } catch (IllegalAccessException ex) {
+            // E.g. a public method declared in a non-public class, fall back to reflection
+            readMethod.setAccessible(true);
+            return new ReflectionAccessor(readMethod);
+        }
+    }
+
+
+    /**
+     * Chains the accessors, each one reads from the value of the previous one.
+     * If any of the intermediate values is <code>null</code>, the accessor returns
+     * <code>null</code> (or 0 from {@link #getLong(Object)} and {@link #getDouble(Object)}).
+     */
+    static ColumnAccessor forPath(ColumnAccessor... accessors) {
+        if (accessors.length == 1) {
+            return accessors[0];
+        }
+        return new PathAccessor(accessors);
+    }
+
+
+    /**
+     * @return an accessor returning {@link #UNREADABLE_VALUE}
+     */
+    static ColumnAccessor unreadable(Class<?> valueType) {
+        return new UnreadableAccessor(valueType);
+    }
+
+
+    public abstract Object getValue(Object bean);
+
+
+    public abstract Class<?> getValueType();
+
+
+    /**
+     * @return <code>true</code> if {@link #getLong(Object)} reads the value without boxing
+     */
+    public boolean isLongValued() {
+        return false;
+    }
+
+
+    /**
+     * @return <code>true</code> if {@link #getDouble(Object)} reads the value without boxing
+     */
+    public boolean isDoubleValued() {
+        return false;
+    }
+
+
+    /**
+     * @return the value as <code>long</code>, <code>0</code> for <code>null</code>
+     * @throws ClassCastException if the value is not a {@link Number}
+     */
+    public long getLong(Object bean) {
+        Number value = (Number) getValue(bean);
+        return value == null ? 0L : value.longValue();
+    }
+
+
+    /**
+     * @return the value as <code>double</code>, <code>0.0</code> for <code>null</code>
+     * @throws ClassCastException if the value is not a {@link Number}
+     */
+    public double getDouble(Object bean) {
+        Number value = (Number) getValue(bean);
+        return value == null ? 0.0 : value.doubleValue();
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    private static class MethodHandleAccessor extends ColumnAccessor {
+
+        private final Class<?> valueType;
+        private final MethodHandle objectGetter;
+        private final MethodHandle longGetter;
+        private final MethodHandle doubleGetter;
+
+
+        MethodHandleAccessor(MethodHandle getter, Class<?> valueType) {
+            this.valueType = valueType;
+            this.objectGetter = getter.asType(OBJECT_GETTER_TYPE);
+            if (valueType == long.class || valueType == int.class
+                    || valueType == short.class || valueType == byte.class || valueType == char.class) {
+                longGetter = getter.asType(LONG_GETTER_TYPE);
+                doubleGetter = getter.asType(DOUBLE_GETTER_TYPE);
+            } else if (valueType == double.class || valueType == float.class) {
+                longGetter = null;
+                doubleGetter = getter.asType(DOUBLE_GETTER_TYPE);
+            } else {
+                longGetter = null;
+                doubleGetter = null;
+            }
+        }
+
+
+        @Override
+        public Object getValue(Object bean) {
+            try {
+                return objectGetter.invokeExact(bean);
+            } catch (Throwable ex) {
+                throw ExceptionUtils.rethrowAsUnchecked(ex);
+            }
+        }
+
+
+        @Override
+        public Class<?> getValueType() {
+            return valueType;
+        }
+
+
+        @Override
+        public boolean isLongValued() {
+            return longGetter != null;
+        }
+
+
+        @Override
+        public boolean isDoubleValued() {
+            return doubleGetter != null;
+        }
+
+
+        @Override
+        public long getLong(Object bean) {
+            if (longGetter == null) {
+                return super.getLong(bean);
+            }
+            try {
+                return (long) longGetter.invokeExact(bean);
+            } catch (Throwable ex) {
+                throw ExceptionUtils.rethrowAsUnchecked(ex);
+            }
+        }
+
+
+        @Override
+        public double getDouble(Object bean) {
+            if (doubleGetter == null) {
+                return super.getDouble(bean);
+            }
+            try {
+                return (double) doubleGetter.invokeExact(bean);
+            } catch (Throwable ex) {
+                throw ExceptionUtils.rethrowAsUnchecked(ex);
+            }
+        }
+    }
+
+
+    private static class PathAccessor extends ColumnAccessor {
+
+        private final ColumnAccessor[] intermediateAccessors;
+        private final ColumnAccessor lastAccessor;
+
+
+        PathAccessor(ColumnAccessor[] accessors) {
+            this.intermediateAccessors = Arrays.copyOf(accessors, accessors.length - 1);
+            this.lastAccessor = accessors[accessors.length - 1];
+        }
+
+
+        private Object getTarget(Object bean) {
+            Object target = bean;
+            for (ColumnAccessor accessor : intermediateAccessors) {
+                target = accessor.getValue(target);
+                if (target == null) {
+                    return null;
+                }
+            }
+            return target;
+        }
+
+
+        @Override
+        public Object getValue(Object bean) {
+            Object target = getTarget(bean);
+            return target == null ? null : lastAccessor.getValue(target);
+        }
+
+
+        @Override
+        public Class<?> getValueType() {
+            return lastAccessor.getValueType();
+        }
+
+
+        @Override
+        public boolean isLongValued() {
+            return lastAccessor.isLongValued();
+        }
+
+
+        @Override
+        public boolean isDoubleValued() {
+            return lastAccessor.isDoubleValued();
+        }
+
+
+        @Override
+        public long getLong(Object bean) {
+            Object target = getTarget(bean);
+            return target == null ? 0L : lastAccessor.getLong(target);
+        }
+
+
+        @Override
+        public double getDouble(Object bean) {
+            Object target = getTarget(bean);
+            return target == null ? 0.0 : lastAccessor.getDouble(target);
+        }
+    }
+
+
+    private static class ReflectionAccessor extends ColumnAccessor {
+
+        private final Method readMethod;
+
+
+        ReflectionAccessor(Method readMethod) {
+            this.readMethod = readMethod;
+        }
+
+
+        @Override
+        public Object getValue(Object bean) {
+            try {
+                return readMethod.invoke(bean);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw ExceptionUtils.rethrowAsUnchecked(ex);
+            }
+        }
+
+
+        @Override
+        public Class<?> getValueType() {
+            return readMethod.getReturnType();
+        }
+    }
+
+
+    private static class UnreadableAccessor extends ColumnAccessor {
+
+        private final Class<?> valueType;
+
+
+        UnreadableAccessor(Class<?> valueType) {
+            this.valueType = valueType;
+        }
+
+
+        @Override
+        public Object getValue(Object bean) {
+            return UNREADABLE_VALUE;
+        }
+
+
+        @Override
+        public Class<?> getValueType() {
+            return valueType == null ? Object.class : valueType;
+        }
+
+
+        @Override
+        public long getLong(Object bean) {
+            return 0L;
+        }
+
+
+        @Override
+        public double getDouble(Object bean) {
+            return 0.0;
+        }
+    }
+}
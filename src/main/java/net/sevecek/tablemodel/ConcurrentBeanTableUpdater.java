@@ -0,0 +1,279 @@
+package net.sevecek.tablemodel;
+
+import java.awt.event.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.swing.*;
+import javax.swing.Timer;
+
+/**
+ * <p>
+ * Lets any number of threads add, update and remove beans of a {@link BeanTableModel}
+ * without calling <code>invokeLater()</code> for every change. The changes are staged
+ * in a lock-free queue and applied on the EDT at most once per frame
+ * (30 frames per second by default), as one {@link BeanTableModel#batch(Runnable)},
+ * so each frame fires one coalesced set of table events.
+ * </p>
+ * <p>
+ * Changes of the same bean within one frame are merged. Beans are matched by the key
+ * extractor of the model if it has one, or by <code>equals()</code> otherwise
+ * (by identity if the model is identity indexed). Without an index of the model,
+ * the rows of all changed beans are found by one pass over the rows per frame:
+ * </p>
+ * <ul>
+ *   <li>only the last version of an updated bean is applied,</li>
+ *   <li>an added and then updated bean is added in its last version,</li>
+ *   <li>an added and then removed bean is not added at all,</li>
+ *   <li>a removed (or updated) and then added bean is removed and added at the end,</li>
+ *   <li>a removed and then updated bean is just removed.</li>
+ * </ul>
+ * <p>
+ * Within a frame the updates are applied first (as one batch), then the removals
+ * and then the additions. Each of the three steps fires its own row events right away,
+ * so the selection of a JTable is kept; only a removal of more than
+ * {@value TableEventBuffer#MAX_EVENTS} separate blocks of rows fires a data change.
+ * Updates of beans which are not in the model are ignored.
+ * </p>
+ * <p>
+ * Models with a {@link RowSource} are read-only, so they are rejected.
+ * </p>
+ */
+public class ConcurrentBeanTableUpdater<T> {
+
+    public static final int DEFAULT_FRAME_RATE = 30;
+
+    private static final int ADD = 0;
+    private static final int UPDATE = 1;
+    private static final int REMOVE = 2;
+    private static final int REMOVE_AND_ADD = 3;
+
+    private final BeanTableModel<T> model;
+    private final Queue<Change<T>> stagedChanges = new ConcurrentLinkedQueue<Change<T>>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Timer timer;
+    private volatile int frameRate;
+
+
+    public ConcurrentBeanTableUpdater(BeanTableModel<T> model) {
+        this(model, DEFAULT_FRAME_RATE);
+    }
+
+
+    public ConcurrentBeanTableUpdater(BeanTableModel<T> model, int frameRate) {
+        if (model == null) throw new NullPointerException("The model argument must not be null");
+        if (model.getRowSource() != null) {
+            throw new IllegalArgumentException("Rows of a model with a RowSource cannot be modified");
+        }
+        this.model = model;
+        this.timer = new Timer(0, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                flush();
+            }
+        });
+        timer.setRepeats(false);
+        setFrameRate(frameRate);
+    }
+
+
+    public BeanTableModel<T> getModel() {
+        return model;
+    }
+
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+
+    /**
+     * @param frameRate the maximum number of times per second the staged changes are applied
+     */
+    public void setFrameRate(int frameRate) {
+        if (frameRate < 1 || frameRate > 1000) {
+            throw new IllegalArgumentException("Frame rate must be between 1 and 1000");
+        }
+        this.frameRate = frameRate;
+        timer.setInitialDelay(1000 / frameRate);
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    /**
+     * May be called from any thread.
+     */
+    public void add(T bean) {
+        stage(ADD, bean);
+    }
+
+
+    /**
+     * May be called from any thread.
+     */
+    public void update(T bean) {
+        stage(UPDATE, bean);
+    }
+
+
+    /**
+     * May be called from any thread.
+     */
+    public void remove(T bean) {
+        stage(REMOVE, bean);
+    }
+
+
+    private void stage(int kind, T bean) {
+        if (bean == null) throw new NullPointerException("Null beans are not allowed");
+        stagedChanges.offer(new Change<T>(kind, bean));
+        if (frameScheduled.compareAndSet(false, true)) {
+            timer.restart();
+        }
+    }
+
+
+    /**
+     * Applies the staged changes immediately. Must be called on the EDT.
+     */
+    public void flush() {
+        frameScheduled.set(false);
+        if (stagedChanges.isEmpty()) {
+            return;
+        }
+
+        // Merges the changes per bean, in the order of their first change:
+        // the map holds the slot of each bean in the list, an emptied slot is null
+        KeyExtractor<? super T> keyExtractor = model.getKeyExtractor();
+        Map<Object, Integer> slots = (keyExtractor == null && model.isIdentityIndexed())
+                ? new IdentityHashMap<Object, Integer>()
+                : new HashMap<Object, Integer>();
+        List<Change<T>> mergedChanges = new ArrayList<Change<T>>();
+        Change<T> change;
+        while ((change = stagedChanges.poll()) != null) {
+            Object key = (keyExtractor == null ? change.bean : keyExtractor.extractKey(change.bean));
+            Integer slot = slots.get(key);
+            Change<T> previous = (slot == null ? null : mergedChanges.get(slot));
+            if (previous == null) {
+                slots.put(key, mergedChanges.size());
+                mergedChanges.add(change);
+            } else if (change.kind == REMOVE) {
+                if (previous.kind == ADD) {
+                    slots.remove(key);
+                    mergedChanges.set(slot, null);
+                } else {
+                    mergedChanges.set(slot, change);
+                }
+            } else if (previous.kind == REMOVE) {
+                if (change.kind == ADD) {
+                    mergedChanges.set(slot, new Change<T>(REMOVE_AND_ADD, change.bean));
+                }
+            } else if (previous.kind == UPDATE && change.kind == ADD) {
+                mergedChanges.set(slot, new Change<T>(REMOVE_AND_ADD, change.bean));
+            } else {
+                // Keeps the kind of the first change, with the last version of the bean
+                mergedChanges.set(slot, new Change<T>(previous.kind, change.bean));
+            }
+        }
+
+        List<T> removed = new ArrayList<T>();
+        final List<T> updated = new ArrayList<T>();
+        List<T> added = new ArrayList<T>();
+        for (Change<T> mergedChange : mergedChanges) {
+            if (mergedChange == null) {
+                continue;
+            }
+            switch (mergedChange.kind) {
+                case ADD:
+                    added.add(mergedChange.bean);
+                    break;
+                case UPDATE:
+                    updated.add(mergedChange.bean);
+                    break;
+                case REMOVE:
+                    removed.add(mergedChange.bean);
+                    break;
+                default:
+                    removed.add(mergedChange.bean);
+                    added.add(mergedChange.bean);
+                    break;
+            }
+        }
+
+        final int[] updatedRows = findRows(updated);
+        int[] removedRows = findRows(removed);
+        if (!updated.isEmpty()) {
+            model.batch(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updatedRows.length; i++) {
+                        if (updatedRows[i] > -1) {
+                            model.updateBean(updatedRows[i], updated.get(i));
+                        }
+                    }
+                }
+            });
+        }
+        if (!removed.isEmpty()) {
+            BitSet removedRowSet = new BitSet(model.getRowCount());
+            for (int row : removedRows) {
+                if (row > -1) {
+                    removedRowSet.set(row);
+                }
+            }
+            model.removeRows(removedRowSet);
+        }
+        if (!added.isEmpty()) {
+            model.addBeans(added);
+        }
+    }
+
+
+    /**
+     * @return the row of every bean or -1 if it is not in the model
+     */
+    private int[] findRows(List<T> beans) {
+        int[] result = new int[beans.size()];
+        if (beans.isEmpty()) {
+            return result;
+        }
+        if (model.getKeyExtractor() != null || model.isIdentityIndexed()) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = model.findBean(beans.get(i));
+            }
+            return result;
+        }
+        // One pass over the rows instead of one per bean, the first equal row wins as in findBean()
+        Map<Object, Integer> positions = new HashMap<Object, Integer>(beans.size() * 4 / 3 + 1);
+        for (int i = 0; i < result.length; i++) {
+            positions.put(beans.get(i), i);
+            result[i] = -1;
+        }
+        int rowCount = model.getRowCount();
+        int remaining = positions.size();
+        for (int row = 0; row < rowCount && remaining > 0; row++) {
+            Integer position = positions.remove(model.getBeanAt(row));
+            if (position != null) {
+                result[position] = row;
+                remaining--;
+            }
+        }
+        return result;
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    private static class Change<T> {
+
+        final int kind;
+        final T bean;
+
+
+        Change(int kind, T bean) {
+            this.kind = kind;
+            this.bean = bean;
+        }
+    }
+}
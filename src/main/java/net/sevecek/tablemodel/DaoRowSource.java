@@ -0,0 +1,55 @@
+package net.sevecek.tablemodel;
+
+import java.io.*;
+import java.util.*;
+import net.sevecek.util.jpa.*;
+
+/**
+ * A {@link RowSource} reading pages of entities by {@link Dao#findAll(int, int)}.
+ * The total number of rows has to be provided, because the Dao cannot count them.
+ * <p>
+ * The Dao is called from a background thread of the model (see {@link RowSource#getRows(int, int)}),
+ * while the EDT may use it too. It must therefore be thread-safe, such as a Dao using
+ * the shared <code>EntityManager</code> proxy of Spring, which opens one per thread or transaction.
+ * A Dao holding its own <code>EntityManager</code> must not be used by this source.
+ * </p>
+ */
+public class DaoRowSource<PK extends Serializable,
+                          E extends AbstractEntity<PK>> implements RowSource<E> {
+
+    private final Dao<PK, E> dao;
+    private volatile int rowCount;
+
+
+    public DaoRowSource(Dao<PK, E> dao, int rowCount) {
+        if (dao == null) throw new NullPointerException("The dao argument must not be null");
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("Row count must be 0 or more");
+        }
+        this.dao = dao;
+        this.rowCount = rowCount;
+    }
+
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+
+    /**
+     * Use together with {@link BeanTableModel#refreshRowSource()} when the number of entities changes.
+     */
+    public void setRowCount(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("Row count must be 0 or more");
+        }
+        this.rowCount = rowCount;
+    }
+
+
+    @Override
+    public List<E> getRows(int firstRow, int count) {
+        return dao.findAll(firstRow, count);
+    }
+}
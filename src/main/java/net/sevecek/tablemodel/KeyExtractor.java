@@ -0,0 +1,16 @@
+package net.sevecek.tablemodel;
+
+/**
+ * Extracts a unique key (such as the primary key) from a bean, so that
+ * {@link BeanTableModel} can find the row of a bean by a hash lookup
+ * and recognize a new instance of the same bean.
+ * The key must implement <code>equals()</code> and <code>hashCode()</code>
+ * and must not change while the bean is in the table.
+ *
+ * @see BeanTableModel#setKeyExtractor(KeyExtractor)
+ */
+public interface KeyExtractor<T> {
+
+    Object extractKey(T bean);
+
+}
@@ -0,0 +1,399 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+/**
+ * <p>
+ * A read-only list of the rows of a {@link RowSource} which loads pages of rows
+ * on the first access and keeps the most recently used pages in a cache.
+ * Whenever the accessed page changes, the next page in the same direction
+ * is prefetched, so scrolling does not wait for the source.
+ * </p>
+ * <p>
+ * The row count and all pages are loaded by the single background thread of the list, so the source
+ * is never called on the EDT nor concurrently. The list is empty until {@link #load()} has read
+ * the row count and the first page and the {@link PageListener} has been notified on the EDT.
+ * When the EDT accesses a row of a page
+ * which is not loaded yet, it gets <code>null</code> at once and the {@link PageListener}
+ * is notified on the EDT after the page has been loaded. Other threads wait for the page.
+ * A failure of the source while the EDT is waiting for a page is passed to the uncaught
+ * exception handler of the EDT and the rows of the page stay <code>null</code>.
+ * </p>
+ * <p>
+ * The size is then the row count of the source read by {@link #load()}.
+ * Rows which the source no longer returns (because it shrank in the meantime)
+ * are <code>null</code>.
+ * </p>
+ */
+class PagedRowList<T> extends AbstractList<T> implements RandomAccess {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int DEFAULT_CACHED_PAGES = 16;
+
+    private final RowSource<T> source;
+    private final int pageSize;
+    private final PageListener pageListener;
+    /**
+     * The row count of the source, known to the loader thread before the EDT publishes it as the size
+     */
+    private volatile int rowCount;
+    /**
+     * Changed on the EDT only, so that the table sees the new size together with the event
+     */
+    private volatile int size;
+    private final ThreadPoolExecutor loader;
+
+    private final Object lock = new Object();
+    private final Map<Integer, List<T>> pages;
+    private final Map<Integer, Future<List<T>>> loadingPages = new HashMap<Integer, Future<List<T>>>();
+    private final Set<Integer> pagesAwaitedByEdt = new HashSet<Integer>();
+    private int lastPage = -1;
+    private boolean disposed;
+
+
+    /**
+     * Does not call the source, see {@link #load()}.
+     *
+     * @param pageListener notified about the loaded rows and the pages the EDT did not wait for, may be <code>null</code>
+     */
+    PagedRowList(RowSource<T> source, int pageSize, final int maxCachedPages, PageListener pageListener) {
+        if (source == null) throw new NullPointerException("The source argument must not be null");
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be 1 or more");
+        }
+        if (maxCachedPages < 3) {
+            // The visible rows may span two pages plus the one being prefetched
+            throw new IllegalArgumentException("At least 3 pages must be cached");
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.pageListener = pageListener;
+        this.pages = new LinkedHashMap<Integer, List<T>>(maxCachedPages * 4 / 3 + 2, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        this.loader = createLoader();
+    }
+
+
+    private static ThreadPoolExecutor createLoader() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task, "BeanTableModel page loader");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /**
+     * Reads the row count and the first page on the loader thread, then sets the size
+     * and notifies the listener on the EDT. A failure is passed to the uncaught exception
+     * handler of the EDT and the list stays empty.
+     */
+    void load() {
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (disposed) {
+                        return;
+                    }
+                }
+                final List<T> firstPage;
+                try {
+                    int count = source.getRowCount();
+                    if (count < 0) {
+                        throw new IllegalStateException("Row source returned a negative row count");
+                    }
+                    rowCount = count;
+                    firstPage = (count == 0 ? Collections.<T>emptyList() : loadPage(0));
+                    synchronized (lock) {
+                        pages.put(0, firstPage);
+                    }
+                } catch (RuntimeException | Error ex) {
+                    reportToEdt(ex);
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (lock) {
+                            if (disposed) {
+                                return;
+                            }
+                        }
+                        size = rowCount;
+                        if (pageListener != null) {
+                            pageListener.rowsLoaded(PagedRowList.this, firstPage);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+
+    RowSource<T> getSource() {
+        return source;
+    }
+
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public T get(int index) {
+        return get(index, false);
+    }
+
+
+    /**
+     * Same as {@link #get(int)}, but waits for the page also on the EDT.
+     */
+    T getAndWait(int index) {
+        return get(index, true);
+    }
+
+
+    private T get(int index, boolean waitOnEdt) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int page = index / pageSize;
+        List<T> pageRows = getPage(page, waitOnEdt);
+        int offset = index - page * pageSize;
+        return (pageRows != null && offset < pageRows.size()) ? pageRows.get(offset) : null;
+    }
+
+
+    /**
+     * @return the rows of the page or <code>null</code> if the EDT would have to wait for them
+     */
+    private List<T> getPage(int page, boolean waitOnEdt) {
+        boolean onEdt = !waitOnEdt && SwingUtilities.isEventDispatchThread();
+        Future<List<T>> loading;
+        synchronized (lock) {
+            List<T> pageRows = pages.get(page);
+            if (pageRows != null) {
+                pageAccessed(page);
+                return pageRows;
+            }
+            loading = startLoading(page);
+            if (onEdt) {
+                pagesAwaitedByEdt.add(page);
+            }
+            pageAccessed(page);
+        }
+        return onEdt ? null : await(page, loading);
+    }
+
+
+    private List<T> await(int page, Future<List<T>> loading) {
+        while (true) {
+            try {
+                return loading.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (CancellationException ex) {
+                // The list has been disposed, but this thread still reads it
+                synchronized (lock) {
+                    List<T> pageRows = pages.get(page);
+                    if (pageRows != null) {
+                        return pageRows;
+                    }
+                    loading = startLoading(page);
+                }
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("Loading of rows failed", cause);
+            }
+        }
+    }
+
+
+    /**
+     * Must be called with the lock held.
+     */
+    private Future<List<T>> startLoading(final int page) {
+        Future<List<T>> loading = loadingPages.get(page);
+        if (loading != null) {
+            return loading;
+        }
+        loading = loader.submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                List<T> pageRows;
+                try {
+                    pageRows = loadPage(page);
+                } catch (RuntimeException | Error ex) {
+                    pageLoadFailed(page, ex);
+                    throw ex;
+                }
+                pageLoaded(page, pageRows);
+                return pageRows;
+            }
+        });
+        loadingPages.put(page, loading);
+        return loading;
+    }
+
+
+    private List<T> loadPage(int page) {
+        int firstRow = page * pageSize;
+        List<T> pageRows = source.getRows(firstRow, Math.min(pageSize, rowCount - firstRow));
+        if (pageRows == null) {
+            pageRows = Collections.emptyList();
+        } else if (!(pageRows instanceof RandomAccess)) {
+            pageRows = new ArrayList<T>(pageRows);
+        }
+        return pageRows;
+    }
+
+
+    private void pageLoaded(final int page, List<T> pageRows) {
+        boolean awaitedByEdt;
+        synchronized (lock) {
+            pages.put(page, pageRows);
+            loadingPages.remove(page);
+            awaitedByEdt = pagesAwaitedByEdt.remove(page);
+        }
+        if (awaitedByEdt && pageListener != null) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    int firstRow = page * pageSize;
+                    pageListener.pageLoaded(PagedRowList.this, firstRow, Math.min(firstRow + pageSize, rowCount) - 1);
+                }
+            });
+        }
+    }
+
+
+    private void pageLoadFailed(int page, Throwable failure) {
+        boolean awaitedByEdt;
+        synchronized (lock) {
+            loadingPages.remove(page);
+            awaitedByEdt = pagesAwaitedByEdt.remove(page);
+            if (awaitedByEdt) {
+                // Not loaded again on every repaint, the rows stay null
+                pages.put(page, Collections.<T>emptyList());
+            }
+        }
+        if (awaitedByEdt) {
+            reportToEdt(failure);
+        }
+    }
+
+
+    private static void reportToEdt(final Throwable failure) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+            }
+        });
+    }
+
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void pageAccessed(int page) {
+        if (page == lastPage) {
+            return;
+        }
+        int nextPage = (page > lastPage ? page + 1 : page - 1);
+        lastPage = page;
+        if (nextPage < 0 || nextPage * pageSize >= rowCount || pages.containsKey(nextPage)) {
+            return;
+        }
+        startLoading(nextPage);
+    }
+
+
+    /**
+     * Cancels the loading of the pages which have not started loading yet,
+     * called when the model no longer displays the list. The listener is not notified
+     * about the rows loaded by {@link #load()} any more. The thread of the list
+     * ends when it has been idle for a while.
+     */
+    void dispose() {
+        synchronized (lock) {
+            disposed = true;
+            for (Future<List<T>> loading : loadingPages.values()) {
+                loading.cancel(false);
+            }
+            loadingPages.clear();
+            pagesAwaitedByEdt.clear();
+        }
+    }
+
+
+    /**
+     * Looks the bean up in the cached pages only, so that it never loads anything.
+     *
+     * @param keyExtractor compares the extracted keys, or the beans by <code>equals()</code> if <code>null</code>
+     * @return the row index or -1
+     */
+    @SuppressWarnings("unchecked")
+    int indexOfCached(Object bean, KeyExtractor<?> keyExtractor) {
+        KeyExtractor<Object> extractor = (KeyExtractor<Object>) keyExtractor;
+        Object key = (extractor == null ? bean : extractor.extractKey(bean));
+        synchronized (lock) {
+            for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+                List<T> pageRows = entry.getValue();
+                for (int i = 0; i < pageRows.size(); i++) {
+                    Object row = pageRows.get(i);
+                    if (row != null && key.equals(extractor == null ? row : extractor.extractKey(row))) {
+                        return entry.getKey() * pageSize + i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    /**
+     * Notified on the EDT.
+     */
+    interface PageListener {
+
+        /**
+         * The size of the list has been set by {@link #load()}.
+         *
+         * @param firstPage the rows of the first page
+         */
+        void rowsLoaded(PagedRowList<?> list, List<?> firstPage);
+
+        /**
+         * A page the EDT did not wait for has been loaded.
+         */
+        void pageLoaded(PagedRowList<?> list, int firstRow, int lastRow);
+    }
+}
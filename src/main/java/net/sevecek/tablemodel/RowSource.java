@@ -0,0 +1,30 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+
+/**
+ * A source of rows for {@link BeanTableModel#setRowSource(RowSource, int)}
+ * which loads pages of beans on demand, so that large tables can be browsed
+ * without loading all rows into memory.
+ *
+ * @see DaoRowSource
+ */
+public interface RowSource<T> {
+
+    /**
+     * @return the total number of rows, it is read once on the background thread of the model
+     *         when the source is set to the model (and again by {@link BeanTableModel#refreshRowSource()})
+     */
+    int getRowCount();
+
+    /**
+     * Loads a page of rows. All pages are loaded on a background thread of the model,
+     * never concurrently for the same source. The implementation must not use resources confined
+     * to another thread, such as an <code>EntityManager</code> opened on the EDT.
+     *
+     * @param firstRow zero-based number of the first row
+     * @param count maximum number of rows to load
+     */
+    List<T> getRows(int firstRow, int count);
+
+}
@@ -0,0 +1,127 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * The difference between the current rows of a {@link BeanTableModel}
+ * and a newly loaded list of beans, matched by key
+ * (by a {@link KeyExtractor} or by <code>equals()</code>).
+ * It is computed on a background thread, so that the EDT only applies the changes.
+ * </p>
+ * <p>
+ * The diff consists of blocks of adjacent rows to delete (row numbers of the old list),
+ * to insert and to update (row numbers of the new list). Beans present in both lists
+ * must keep their relative order; if they don't, or if the keys are not unique,
+ * {@link #isApplicable()} returns <code>false</code> and the rows have to be
+ * replaced as a whole.
+ * </p>
+ * <p>
+ * A matched row is updated if the new bean is not the same instance as the old one,
+ * a bean modified in place is not detected.
+ * </p>
+ */
+class RowsDiff {
+
+    private final List<int[]> deletedBlocks = new ArrayList<int[]>();
+    private final List<int[]> insertedBlocks = new ArrayList<int[]>();
+    private final List<int[]> updatedBlocks = new ArrayList<int[]>();
+    private boolean applicable = true;
+
+
+    @SuppressWarnings("unchecked")
+    RowsDiff(Object[] oldRows, List<?> newRows, KeyExtractor<?> keyExtractor) {
+        KeyExtractor<Object> extractor = (KeyExtractor<Object>) keyExtractor;
+
+        Map<Object, Integer> newPositions = new HashMap<Object, Integer>(newRows.size() * 4 / 3 + 1);
+        for (int i = 0; i < newRows.size(); i++) {
+            Object key = keyOf(extractor, newRows.get(i));
+            if (newPositions.put(key, i) != null) {
+                applicable = false;
+                return;
+            }
+        }
+
+        boolean[] matchedNewRows = new boolean[newRows.size()];
+        int lastMatchedNewRow = -1;
+        Set<Object> oldKeys = new HashSet<Object>(oldRows.length * 4 / 3 + 1);
+        for (int i = 0; i < oldRows.length; i++) {
+            Object key = keyOf(extractor, oldRows[i]);
+            if (!oldKeys.add(key)) {
+                applicable = false;
+                return;
+            }
+            Integer newRow = newPositions.get(key);
+            if (newRow == null) {
+                addToBlocks(deletedBlocks, i);
+            } else {
+                if (newRow < lastMatchedNewRow) {
+                    // The order of the rows has changed
+                    applicable = false;
+                    return;
+                }
+                lastMatchedNewRow = newRow;
+                matchedNewRows[newRow] = true;
+                if (newRows.get(newRow) != oldRows[i]) {
+                    addToBlocks(updatedBlocks, newRow);
+                }
+            }
+        }
+        for (int i = 0; i < matchedNewRows.length; i++) {
+            if (!matchedNewRows[i]) {
+                addToBlocks(insertedBlocks, i);
+            }
+        }
+    }
+
+
+    private static Object keyOf(KeyExtractor<Object> extractor, Object bean) {
+        return extractor == null ? bean : extractor.extractKey(bean);
+    }
+
+
+    private static void addToBlocks(List<int[]> blocks, int row) {
+        if (!blocks.isEmpty()) {
+            int[] lastBlock = blocks.get(blocks.size() - 1);
+            if (lastBlock[1] == row - 1) {
+                lastBlock[1] = row;
+                return;
+            }
+        }
+        blocks.add(new int[] {row, row});
+    }
+
+
+    boolean isApplicable() {
+        return applicable;
+    }
+
+
+    int getBlockCount() {
+        return deletedBlocks.size() + insertedBlocks.size() + updatedBlocks.size();
+    }
+
+
+    /**
+     * @return blocks of {first, last} row numbers in the old list, in ascending order
+     */
+    List<int[]> getDeletedBlocks() {
+        return deletedBlocks;
+    }
+
+
+    /**
+     * @return blocks of {first, last} row numbers in the new list, in ascending order
+     */
+    List<int[]> getInsertedBlocks() {
+        return insertedBlocks;
+    }
+
+
+    /**
+     * @return blocks of {first, last} row numbers in the new list, in ascending order
+     */
+    List<int[]> getUpdatedBlocks() {
+        return updatedBlocks;
+    }
+}
@@ -0,0 +1,748 @@
+package net.sevecek.tablemodel;
+
+import java.beans.*;
+import java.lang.reflect.Array;
+import java.text.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.table.*;
+
+/**
+ * <p>
+ * A sorted and filtered view of a {@link BeanTableModel}, to be used instead
+ * of a {@link TableRowSorter} (use it as the model of a JTable without a row sorter).
+ * </p>
+ * <p>
+ * The sort keys are read from the beans by the compiled {@link ColumnAccessor}s
+ * of the model once per changed row and kept in arrays indexed by model row:
+ * <code>long[]</code> and <code>double[]</code> for primitive numeric properties,
+ * collation keys for strings and the values themselves for anything else.
+ * The view is kept sorted by the sort keys and then by the model row, so any row
+ * is found by a binary search. A change of a few rows of the model moves just those
+ * rows by binary insertion and fires events for them, instead of sorting all rows again.
+ * A full re-sort only happens when the model fires a data or structure change
+ * or when many rows change at once. If many rows were only updated and the view
+ * has kept its order, just their range is updated, so the selection of a JTable is kept.
+ * </p>
+ * <p>
+ * The view reads all rows of the model, so it is not suitable for a model
+ * with a {@link RowSource}.
+ * </p>
+ * <p>
+ * The view listens to the model, so a view which is no longer used must be
+ * {@link #dispose() disposed} if the model lives longer.
+ * </p>
+ */
+public class SortedBeanTableModel<T> extends AbstractTableModel implements TableModel {
+
+    /**
+     * Changes of more model rows at once are handled by sorting all rows again
+     */
+    private static final int MAX_INCREMENTAL_ROWS = 64;
+
+    private final BeanTableModel<T> model;
+    private final TableModelListener modelListener = new TableModelListener() {
+        @Override
+        public void tableChanged(TableModelEvent event) {
+            modelChanged(event);
+        }
+    };
+
+    private List<RowSorter.SortKey> sortKeys = Collections.emptyList();
+    private BeanFilter<? super T> filter;
+
+    private SortKeyColumn[] sortKeyColumns = new SortKeyColumn[0];
+    private int modelRowCount;
+    private int[] viewToModel = new int[0];
+    private int viewRowCount;
+
+    private PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
+
+
+    public SortedBeanTableModel(BeanTableModel<T> model) {
+        if (model == null) throw new NullPointerException("The model argument must not be null");
+        this.model = model;
+        model.addTableModelListener(modelListener);
+        refreshSortKeyColumns();
+        rebuild();
+    }
+
+
+    public BeanTableModel<T> getModel() {
+        return model;
+    }
+
+
+    /**
+     * Stops listening to the model, the view no longer follows its changes.
+     * Must be called when the view is no longer used, otherwise the model keeps it reachable
+     * and it keeps sorting the changed rows.
+     */
+    public void dispose() {
+        model.removeTableModelListener(modelListener);
+    }
+
+
+    public List<RowSorter.SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+
+    /**
+     * Sorts the rows by the given columns (of the model), the first key is the primary one.
+     * Keys with {@link SortOrder#UNSORTED} are ignored. Rows with equal keys keep
+     * the order of the model. <code>null</code> or an empty list shows the rows in the order
+     * of the model.
+     */
+    public void setSortKeys(List<? extends RowSorter.SortKey> newSortKeys) {
+        List<RowSorter.SortKey> oldValue = sortKeys;
+        if (newSortKeys == null || newSortKeys.isEmpty()) {
+            sortKeys = Collections.emptyList();
+        } else {
+            sortKeys = Collections.unmodifiableList(new ArrayList<RowSorter.SortKey>(newSortKeys));
+        }
+        refreshSortKeyColumns();
+        rebuild();
+        fireTableDataChanged();
+        propertyChangeSupport.firePropertyChange("sortKeys", oldValue, sortKeys);
+    }
+
+
+    public BeanFilter<? super T> getFilter() {
+        return filter;
+    }
+
+
+    /**
+     * @param newFilter beans it does not include are hidden, <code>null</code> shows all beans
+     */
+    public void setFilter(BeanFilter<? super T> newFilter) {
+        BeanFilter<? super T> oldValue = filter;
+        filter = newFilter;
+        rebuild();
+        fireTableDataChanged();
+        propertyChangeSupport.firePropertyChange("filter", oldValue, newFilter);
+    }
+
+
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        propertyChangeSupport.addPropertyChangeListener(listener);
+    }
+
+
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        propertyChangeSupport.removePropertyChangeListener(listener);
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    public int convertRowIndexToModel(int viewRowIndex) {
+        if (viewRowIndex < 0 || viewRowIndex >= viewRowCount) {
+            throw new IndexOutOfBoundsException("Row number " + viewRowIndex + " was requested but the view has only " + viewRowCount + " rows");
+        }
+        return viewToModel[viewRowIndex];
+    }
+
+
+    /**
+     * @return the row of the view or -1 if the model row is filtered out
+     */
+    public int convertRowIndexToView(int modelRowIndex) {
+        if (modelRowIndex < 0 || modelRowIndex >= modelRowCount) {
+            throw new IndexOutOfBoundsException("Row number " + modelRowIndex + " was requested but the model has only " + modelRowCount + " rows");
+        }
+        return Math.max(findInView(modelRowIndex), -1);
+    }
+
+
+    public T getBeanAt(int rowIndex) {
+        return model.getBeanAt(convertRowIndexToModel(rowIndex));
+    }
+
+
+    @Override
+    public int getRowCount() {
+        return viewRowCount;
+    }
+
+
+    @Override
+    public int getColumnCount() {
+        return model.getColumnCount();
+    }
+
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return model.getColumnName(columnIndex);
+    }
+
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return model.getColumnClass(columnIndex);
+    }
+
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return model.getValueAt(convertRowIndexToModel(rowIndex), columnIndex);
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    private void refreshSortKeyColumns() {
+        List<SortKeyColumn> columns = new ArrayList<SortKeyColumn>(sortKeys.size());
+        for (RowSorter.SortKey sortKey : sortKeys) {
+            if (sortKey.getSortOrder() == SortOrder.UNSORTED
+                    || sortKey.getColumn() >= model.getColumnCount()) {
+                continue;
+            }
+            ColumnAccessor accessor = model.getColumnAccessor(sortKey.getColumn());
+            if (accessor == null) {
+                continue;   // The bean class is not known yet
+            }
+            int direction = (sortKey.getSortOrder() == SortOrder.ASCENDING ? 1 : -1);
+            if (accessor.isLongValued()) {
+                columns.add(new LongSortKeyColumn(sortKey.getColumn(), accessor, direction));
+            } else if (accessor.isDoubleValued()) {
+                columns.add(new DoubleSortKeyColumn(sortKey.getColumn(), accessor, direction));
+            } else {
+                columns.add(new ObjectSortKeyColumn(sortKey.getColumn(), accessor, direction));
+            }
+        }
+        sortKeyColumns = columns.toArray(new SortKeyColumn[columns.size()]);
+    }
+
+
+    private boolean isSortKeyColumn(int columnIndex) {
+        for (SortKeyColumn column : sortKeyColumns) {
+            if (column.columnIndex == columnIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void rebuild() {
+        modelRowCount = model.getRowCount();
+        for (SortKeyColumn column : sortKeyColumns) {
+            column.reset(modelRowCount);
+        }
+        viewToModel = new int[modelRowCount];
+        viewRowCount = 0;
+        for (int i = 0; i < modelRowCount; i++) {
+            if (readRow(i)) {
+                viewToModel[viewRowCount++] = i;
+            }
+        }
+        if (sortKeyColumns.length > 0) {
+            int[] sorted = viewToModel.clone();
+            mergeSort(viewToModel, sorted, 0, viewRowCount);
+            viewToModel = sorted;
+        }
+    }
+
+
+    /**
+     * Sorts src[from, to) into dest[from, to), both arrays must contain the same values.
+     */
+    private void mergeSort(int[] src, int[] dest, int from, int to) {
+        if (to - from < 8) {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compareRows(dest[j - 1], dest[j]) > 0; j--) {
+                    int swapped = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = swapped;
+                }
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(dest, src, from, middle);
+        mergeSort(dest, src, middle, to);
+        if (compareRows(src[middle - 1], src[middle]) <= 0) {
+            System.arraycopy(src, from, dest, from, to - from);
+            return;
+        }
+        for (int i = from, p = from, q = middle; i < to; i++) {
+            if (q >= to || (p < middle && compareRows(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+
+    /**
+     * Reads the sort keys of the model row.
+     *
+     * @return <code>true</code> if the filter includes the bean
+     */
+    private boolean readRow(int modelRowIndex) {
+        T bean = model.getBeanAt(modelRowIndex);
+        for (SortKeyColumn column : sortKeyColumns) {
+            column.read(modelRowIndex, bean);
+        }
+        return filter == null || filter.include(bean);
+    }
+
+
+    private int compareRows(int modelRowA, int modelRowB) {
+        for (SortKeyColumn column : sortKeyColumns) {
+            int result = column.compare(modelRowA, modelRowB);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return modelRowA < modelRowB ? -1 : (modelRowA == modelRowB ? 0 : 1);
+    }
+
+
+    /**
+     * The sort keys of the model row must be the ones it was inserted into the view with.
+     *
+     * @return the row of the view, or <code>-(insertion point) - 1</code> if it is not in the view
+     */
+    private int findInView(int modelRowIndex) {
+        int low = 0;
+        int high = viewRowCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = compareRows(viewToModel[middle], modelRowIndex);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    private void insertIntoView(int modelRowIndex) {
+        int viewRowIndex = -(findInView(modelRowIndex) + 1);
+        if (viewRowCount == viewToModel.length) {
+            viewToModel = Arrays.copyOf(viewToModel, Math.max(16, viewRowCount * 2));
+        }
+        System.arraycopy(viewToModel, viewRowIndex, viewToModel, viewRowIndex + 1, viewRowCount - viewRowIndex);
+        viewToModel[viewRowIndex] = modelRowIndex;
+        viewRowCount++;
+    }
+
+
+    /**
+     * @param viewRowIndexes ascending
+     */
+    private void removeFromView(int[] viewRowIndexes, int count) {
+        if (count == 0) {
+            return;
+        }
+        int kept = viewRowIndexes[0];
+        for (int i = viewRowIndexes[0], j = 0; i < viewRowCount; i++) {
+            if (j < count && viewRowIndexes[j] == i) {
+                j++;
+            } else {
+                viewToModel[kept++] = viewToModel[i];
+            }
+        }
+        viewRowCount = kept;
+    }
+
+
+    /**
+     * Adds the delta to all model rows in the view from the given one.
+     */
+    private void renumberModelRows(int fromModelRowIndex, int delta) {
+        for (int i = 0; i < viewRowCount; i++) {
+            if (viewToModel[i] >= fromModelRowIndex) {
+                viewToModel[i] += delta;
+            }
+        }
+    }
+
+
+    /**
+     * @return the ascending rows of the view of the model rows which are in the view
+     */
+    private int[] findRangeInView(int firstModelRowIndex, int lastModelRowIndex, int[] count) {
+        int[] viewRowIndexes = new int[lastModelRowIndex - firstModelRowIndex + 1];
+        int found = 0;
+        for (int i = firstModelRowIndex; i <= lastModelRowIndex; i++) {
+            int viewRowIndex = findInView(i);
+            if (viewRowIndex >= 0) {
+                viewRowIndexes[found++] = viewRowIndex;
+            }
+        }
+        Arrays.sort(viewRowIndexes, 0, found);
+        count[0] = found;
+        return viewRowIndexes;
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    private void modelChanged(TableModelEvent event) {
+        int firstRow = event.getFirstRow();
+        int lastRow = event.getLastRow();
+        if (firstRow == TableModelEvent.HEADER_ROW) {
+            refreshSortKeyColumns();
+            rebuild();
+            fireTableStructureChanged();
+            return;
+        }
+        int rowCountChange = (event.getType() == TableModelEvent.INSERT ? lastRow - firstRow + 1
+                : event.getType() == TableModelEvent.DELETE ? -(lastRow - firstRow + 1) : 0);
+        if (lastRow == Integer.MAX_VALUE
+                || (rowCountChange == 0 && lastRow >= modelRowCount)
+                || model.getRowCount() != modelRowCount + rowCountChange) {
+            rebuild();
+            fireTableDataChanged();
+            return;
+        }
+        if (lastRow - firstRow + 1 > MAX_INCREMENTAL_ROWS) {
+            if (event.getType() == TableModelEvent.UPDATE) {
+                manyRowsUpdated(firstRow, lastRow, event.getColumn());
+            } else {
+                rebuild();
+                fireTableDataChanged();
+            }
+            return;
+        }
+        switch (event.getType()) {
+            case TableModelEvent.INSERT:
+                rowsInserted(firstRow, lastRow);
+                break;
+            case TableModelEvent.DELETE:
+                rowsDeleted(firstRow, lastRow);
+                break;
+            default:
+                rowsUpdated(firstRow, lastRow, event.getColumn());
+                break;
+        }
+    }
+
+
+    private void rowsInserted(int firstRow, int lastRow) {
+        int count = lastRow - firstRow + 1;
+        for (SortKeyColumn column : sortKeyColumns) {
+            column.insertRows(firstRow, count);
+        }
+        modelRowCount += count;
+        renumberModelRows(firstRow, count);
+
+        for (int i = firstRow; i <= lastRow; i++) {
+            if (readRow(i)) {
+                insertIntoView(i);
+            }
+        }
+        int[] insertedCount = new int[1];
+        int[] inserted = findRangeInView(firstRow, lastRow, insertedCount);
+        fireRowEvents(new int[0], 0, inserted, insertedCount[0]);
+    }
+
+
+    private void rowsDeleted(int firstRow, int lastRow) {
+        int count = lastRow - firstRow + 1;
+        int[] deletedCount = new int[1];
+        int[] deleted = findRangeInView(firstRow, lastRow, deletedCount);
+        removeFromView(deleted, deletedCount[0]);
+
+        for (SortKeyColumn column : sortKeyColumns) {
+            column.deleteRows(firstRow, count);
+        }
+        modelRowCount -= count;
+        renumberModelRows(lastRow + 1, -count);
+        fireRowEvents(deleted, deletedCount[0], new int[0], 0);
+    }
+
+
+    private void rowsUpdated(int firstRow, int lastRow, int columnIndex) {
+        if (columnIndex != TableModelEvent.ALL_COLUMNS && filter == null && !isSortKeyColumn(columnIndex)) {
+            // The order cannot change, just repaint the cells
+            for (int i = firstRow; i <= lastRow; i++) {
+                int viewRowIndex = findInView(i);
+                if (viewRowIndex >= 0) {
+                    fireTableChanged(new TableModelEvent(this, viewRowIndex, viewRowIndex, columnIndex));
+                }
+            }
+            return;
+        }
+
+        int[] deletedCount = new int[1];
+        int[] deleted = findRangeInView(firstRow, lastRow, deletedCount);
+        removeFromView(deleted, deletedCount[0]);
+        for (int i = firstRow; i <= lastRow; i++) {
+            if (readRow(i)) {
+                insertIntoView(i);
+            }
+        }
+        int[] insertedCount = new int[1];
+        int[] inserted = findRangeInView(firstRow, lastRow, insertedCount);
+
+        if (deletedCount[0] == insertedCount[0]
+                && Arrays.equals(Arrays.copyOf(deleted, deletedCount[0]), Arrays.copyOf(inserted, insertedCount[0]))) {
+            // The rows stay at the same places of the view
+            for (int[] block : toBlocks(inserted, insertedCount[0])) {
+                fireTableChanged(new TableModelEvent(this, block[0], block[1], columnIndex));
+            }
+            return;
+        }
+        fireRowEvents(deleted, deletedCount[0], inserted, insertedCount[0]);
+    }
+
+
+    /**
+     * Sorts all rows again. If the view has kept its order, only the range of the view rows
+     * of the updated model rows is updated, which keeps the selection of a JTable.
+     */
+    private void manyRowsUpdated(int firstRow, int lastRow, int columnIndex) {
+        if (columnIndex == TableModelEvent.ALL_COLUMNS || filter != null || isSortKeyColumn(columnIndex)) {
+            int[] oldViewToModel = Arrays.copyOf(viewToModel, viewRowCount);
+            rebuild();
+            if (!Arrays.equals(oldViewToModel, Arrays.copyOf(viewToModel, viewRowCount))) {
+                fireTableDataChanged();
+                return;
+            }
+        }
+        int firstViewRowIndex = -1;
+        int lastViewRowIndex = -1;
+        for (int i = 0; i < viewRowCount; i++) {
+            if (viewToModel[i] >= firstRow && viewToModel[i] <= lastRow) {
+                if (firstViewRowIndex < 0) {
+                    firstViewRowIndex = i;
+                }
+                lastViewRowIndex = i;
+            }
+        }
+        if (firstViewRowIndex >= 0) {
+            fireTableChanged(new TableModelEvent(this, firstViewRowIndex, lastViewRowIndex, columnIndex));
+        }
+    }
+
+
+    /**
+     * Fires the deletes from the last row (the row numbers of the view before the change)
+     * and then the inserts from the first row (the row numbers of the view after the change),
+     * which is the correct sequence of events. Too many events are replaced by a data change.
+     */
+    private void fireRowEvents(int[] deleted, int deletedCount, int[] inserted, int insertedCount) {
+        List<int[]> deletedBlocks = toBlocks(deleted, deletedCount);
+        List<int[]> insertedBlocks = toBlocks(inserted, insertedCount);
+        if (deletedBlocks.size() + insertedBlocks.size() > TableEventBuffer.MAX_EVENTS) {
+            fireTableDataChanged();
+            return;
+        }
+        for (int i = deletedBlocks.size() - 1; i >= 0; i--) {
+            int[] block = deletedBlocks.get(i);
+            fireTableRowsDeleted(block[0], block[1]);
+        }
+        for (int[] block : insertedBlocks) {
+            fireTableRowsInserted(block[0], block[1]);
+        }
+    }
+
+
+    private static List<int[]> toBlocks(int[] rows, int count) {
+        List<int[]> blocks = new ArrayList<int[]>();
+        for (int i = 0; i < count; i++) {
+            if (!blocks.isEmpty() && blocks.get(blocks.size() - 1)[1] == rows[i] - 1) {
+                blocks.get(blocks.size() - 1)[1] = rows[i];
+            } else {
+                blocks.add(new int[] {rows[i], rows[i]});
+            }
+        }
+        return blocks;
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    /**
+     * The sort keys of one column, indexed by model row
+     */
+    private abstract static class SortKeyColumn {
+
+        final int columnIndex;
+        final ColumnAccessor accessor;
+        final int direction;
+        Object keys;
+        int size;
+
+
+        SortKeyColumn(int columnIndex, ColumnAccessor accessor, int direction) {
+            this.columnIndex = columnIndex;
+            this.accessor = accessor;
+            this.direction = direction;
+            this.keys = newArray(16);
+        }
+
+
+        abstract Object newArray(int length);
+
+
+        abstract void read(int row, Object bean);
+
+
+        /**
+         * @return the comparison of the keys, already in the sort direction
+         */
+        abstract int compare(int rowA, int rowB);
+
+
+        void reset(int rowCount) {
+            keys = newArray(Math.max(16, rowCount));
+            size = rowCount;
+        }
+
+
+        void insertRows(int firstRow, int count) {
+            int length = Array.getLength(keys);
+            if (size + count > length) {
+                Object newKeys = newArray(Math.max(size + count, length * 2));
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                keys = newKeys;
+            }
+            System.arraycopy(keys, firstRow, keys, firstRow + count, size - firstRow);
+            size += count;
+        }
+
+
+        void deleteRows(int firstRow, int count) {
+            System.arraycopy(keys, firstRow + count, keys, firstRow, size - firstRow - count);
+            size -= count;
+        }
+    }
+
+
+    private static class LongSortKeyColumn extends SortKeyColumn {
+
+        LongSortKeyColumn(int columnIndex, ColumnAccessor accessor, int direction) {
+            super(columnIndex, accessor, direction);
+        }
+
+
+        @Override
+        Object newArray(int length) {
+            return new long[length];
+        }
+
+
+        @Override
+        void read(int row, Object bean) {
+            ((long[]) keys)[row] = accessor.getLong(bean);
+        }
+
+
+        @Override
+        int compare(int rowA, int rowB) {
+            long[] longKeys = (long[]) keys;
+            long a = longKeys[rowA];
+            long b = longKeys[rowB];
+            return a < b ? -direction : (a == b ? 0 : direction);
+        }
+    }
+
+
+    private static class DoubleSortKeyColumn extends SortKeyColumn {
+
+        DoubleSortKeyColumn(int columnIndex, ColumnAccessor accessor, int direction) {
+            super(columnIndex, accessor, direction);
+        }
+
+
+        @Override
+        Object newArray(int length) {
+            return new double[length];
+        }
+
+
+        @Override
+        void read(int row, Object bean) {
+            ((double[]) keys)[row] = accessor.getDouble(bean);
+        }
+
+
+        @Override
+        int compare(int rowA, int rowB) {
+            double[] doubleKeys = (double[]) keys;
+            return Double.compare(doubleKeys[rowA], doubleKeys[rowB]) * direction;
+        }
+    }
+
+
+    /**
+     * Strings are compared by the {@link Collator} of the default locale (as by {@link TableRowSorter}),
+     * their collation keys are computed once when the row is read.
+     * Other {@link Comparable} values are compared naturally, anything else by <code>toString()</code>.
+     * <code>null</code> is less than any other value.
+     */
+    private static class ObjectSortKeyColumn extends SortKeyColumn {
+
+        private final Collator collator = Collator.getInstance();
+
+
+        ObjectSortKeyColumn(int columnIndex, ColumnAccessor accessor, int direction) {
+            super(columnIndex, accessor, direction);
+        }
+
+
+        @Override
+        Object newArray(int length) {
+            return new Object[length];
+        }
+
+
+        @Override
+        void read(int row, Object bean) {
+            Object value = accessor.getValue(bean);
+            if (value instanceof String) {
+                value = collator.getCollationKey((String) value);
+            } else if (value != null && !(value instanceof Comparable)) {
+                value = collator.getCollationKey(value.toString());
+            }
+            ((Object[]) keys)[row] = value;
+        }
+
+
+        @Override
+        @SuppressWarnings("unchecked")
+        int compare(int rowA, int rowB) {
+            Object[] objectKeys = (Object[]) keys;
+            Object a = objectKeys[rowA];
+            Object b = objectKeys[rowB];
+            int result;
+            if (a == b) {
+                return 0;
+            } else if (a == null) {
+                result = -1;
+            } else if (b == null) {
+                result = 1;
+            } else if (a.getClass() == b.getClass()) {
+                result = ((Comparable<Object>) a).compareTo(b);
+            } else {
+                result = toString(a).compareTo(toString(b));
+            }
+            return result * direction;
+        }
+
+
+        private static String toString(Object key) {
+            return key instanceof CollationKey ? ((CollationKey) key).getSourceString() : key.toString();
+        }
+
+
+        @Override
+        void deleteRows(int firstRow, int count) {
+            super.deleteRows(firstRow, count);
+            Arrays.fill((Object[]) keys, size, size + count, null);
+        }
+    }
+}
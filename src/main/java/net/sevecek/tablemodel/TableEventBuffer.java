@@ -0,0 +1,149 @@
+package net.sevecek.tablemodel;
+
+import java.util.*;
+import javax.swing.event.*;
+import javax.swing.table.*;
+
+/**
+ * <p>
+ * Collects {@link TableModelEvent}s while {@link BeanTableModel} applies a batch
+ * of changes and reduces them to the smallest equivalent sequence.
+ * Consecutive inserts, deletes or updates of adjacent rows are merged into
+ * one range event and updates of freshly inserted rows are dropped.
+ * </p>
+ * <p>
+ * The events are fired after all the changes, when listeners can only see the final
+ * state of the model. That is consistent for a single event or for any number
+ * of updates, but not for a sequence of inserts and deletes (the row numbers
+ * of the earlier events refer to intermediate states). Such a batch is therefore
+ * reported as a single data change. So is a batch with any structure change
+ * or full data change.
+ * </p>
+ * <p>
+ * A batch of updates only is never reported as a data change, because that
+ * would clear the selection of a JTable: more than {@link #MAX_EVENTS} update events
+ * after merging become a single update of all rows between the first and the last
+ * updated one.
+ * </p>
+ */
+class TableEventBuffer {
+
+    static final int MAX_EVENTS = 16;
+
+    private final List<TableModelEvent> events = new ArrayList<TableModelEvent>();
+    private boolean structureChanged;
+    private boolean dataChanged;
+
+
+    void add(TableModelEvent event) {
+        if (structureChanged) {
+            return;
+        }
+        if (event.getFirstRow() == TableModelEvent.HEADER_ROW) {
+            structureChanged = true;
+            events.clear();
+            return;
+        }
+        if (dataChanged) {
+            return;
+        }
+        if (event.getType() == TableModelEvent.UPDATE
+                && event.getFirstRow() == 0 && event.getLastRow() == Integer.MAX_VALUE) {
+            dataChanged = true;
+            events.clear();
+            return;
+        }
+        if (!events.isEmpty()) {
+            TableModelEvent merged = merge(events.get(events.size() - 1), event);
+            if (merged != null) {
+                events.set(events.size() - 1, merged);
+                return;
+            }
+        }
+        events.add(event);
+        if (events.size() > 1 && (event.getType() != TableModelEvent.UPDATE
+                                  || events.get(0).getType() != TableModelEvent.UPDATE)) {
+            dataChanged = true;
+            events.clear();
+        } else if (events.size() > MAX_EVENTS) {
+            collapseUpdates();
+        }
+    }
+
+
+    private void collapseUpdates() {
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        for (TableModelEvent event : events) {
+            firstRow = Math.min(firstRow, event.getFirstRow());
+            lastRow = Math.max(lastRow, event.getLastRow());
+        }
+        TableModel source = (TableModel) events.get(0).getSource();
+        events.clear();
+        events.add(new TableModelEvent(source, firstRow, lastRow));
+    }
+
+
+    boolean isEmpty() {
+        return !structureChanged && !dataChanged && events.isEmpty();
+    }
+
+
+    /**
+     * @return the reduced events (in the order they must be fired) and clears the buffer
+     */
+    List<TableModelEvent> drain(TableModel source) {
+        List<TableModelEvent> result;
+        if (structureChanged) {
+            result = Collections.singletonList(new TableModelEvent(source, TableModelEvent.HEADER_ROW));
+        } else if (dataChanged) {
+            result = Collections.singletonList(new TableModelEvent(source));
+        } else {
+            result = new ArrayList<TableModelEvent>(events);
+        }
+        events.clear();
+        structureChanged = false;
+        dataChanged = false;
+        return result;
+    }
+
+
+    private static TableModelEvent merge(TableModelEvent previous, TableModelEvent next) {
+        if (previous.getType() == TableModelEvent.INSERT && next.getType() == TableModelEvent.UPDATE
+                && previous.getFirstRow() <= next.getFirstRow() && next.getLastRow() <= previous.getLastRow()) {
+            return previous;
+        }
+        if (previous.getType() == TableModelEvent.UPDATE && next.getType() == TableModelEvent.UPDATE
+                && previous.getColumn() == TableModelEvent.ALL_COLUMNS
+                && previous.getFirstRow() <= next.getFirstRow() && next.getLastRow() <= previous.getLastRow()) {
+            return previous;
+        }
+        if (previous.getType() != next.getType() || previous.getColumn() != next.getColumn()) {
+            return null;
+        }
+        int a = previous.getFirstRow();
+        int b = previous.getLastRow();
+        int c = next.getFirstRow();
+        int d = next.getLastRow();
+        TableModel source = (TableModel) previous.getSource();
+        switch (next.getType()) {
+            case TableModelEvent.INSERT:
+                // Rows inserted inside or right after the previously inserted block
+                if (a <= c && c <= b + 1) {
+                    return new TableModelEvent(source, a, b + (d - c + 1), next.getColumn(), TableModelEvent.INSERT);
+                }
+                return null;
+            case TableModelEvent.DELETE:
+                // Rows deleted around the place where the previous block was deleted
+                if (c <= a && a <= d + 1) {
+                    return new TableModelEvent(source, c, d + (b - a + 1), next.getColumn(), TableModelEvent.DELETE);
+                }
+                return null;
+            default:
+                if (c <= b + 1 && a <= d + 1) {
+                    return new TableModelEvent(source, Math.min(a, c), Math.max(b, d), next.getColumn(), TableModelEvent.UPDATE);
+                }
+                return null;
+        }
+    }
+}
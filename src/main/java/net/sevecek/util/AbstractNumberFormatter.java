@@ -1,34 +1,433 @@
 package net.sevecek.util;
 
-import java.lang.reflect.*;
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.ref.*;
+import java.math.*;
 import java.text.*;
-import java.util.Locale;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Prints and parses numbers by a {@link DecimalFormat} of the locale, optionally
+ * with a pattern. A configured format for every (locale, pattern) pair is created once
+ * and cloned once per thread, so printing and parsing create no formats in the steady state.
+ * Integers and doubles of plain patterns (no prefix, suffix, multiplier or exponent)
+ * are printed without the format, directly from the symbols of the locale,
+ * giving the same output.
+ * <p>
+ * The formats are never shared by threads, so one formatter can be used by any number
+ * of threads without locking. The settings are safely published to all threads,
+ * but changing them while the formatter is in use affects the calls in progress unpredictably.
+ * Formatters shared as singletons should rather be created by {@link NumberFormatterBuilder},
+ * which makes them immutable and returns them as {@link ReadOnlyNumberFormatter}s.
+ * </p>
+ * <p>
+ * The shared formats and the formats of every thread are cached by (locale, pattern),
+ * each cache holds at most {@value #MAX_CACHED_FORMATS} formats and is cleared when it is full,
+ * so patterns created at run time only cost creating the formats again.
+ * The formats of a thread stay with the thread, which keeps the class loader
+ * of this class reachable from the pooled threads of an application server;
+ * call {@link #clearThreadFormats()} at the end of the work of such a thread
+ * if the application is to be redeployed.
+ * </p>
+ */
 public class AbstractNumberFormatter {
 
-    private boolean lenient = false;
-    private String pattern;
+    /**
+     * Returned by {@link #parsePlainLong(CharSequence, int, int, Locale)} if the text is not a plain integer
+     */
+    static final long NOT_PLAIN_INTEGER = Long.MIN_VALUE;
+
+    /**
+     * Returned by {@link #parsePlainDouble(CharSequence, int, int, Locale)} if the text is not a plain decimal number
+     */
+    static final double NOT_PLAIN_DECIMAL = Double.NaN;
+
+    /**
+     * Powers of ten exactly representable as doubles
+     */
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Returned by {@link #printPlainDouble(double, ThreadFormat, char[])} if the number must be printed by the format
+     */
+    private static final int NOT_PLAIN_DOUBLE = -1;
+
+    /**
+     * The most fraction digits printed without the format
+     */
+    private static final int MAX_PLAIN_FRACTION_DIGITS = 15;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L
+    };
+
+    /**
+     * Doubles below the limit printed with the given number of fraction digits have at most 15 significant digits,
+     * so the digits of {@link Double#toString(double)} (which the format rounds) round to the same value
+     * as the exact binary value does
+     */
+    private static final double[] PLAIN_DOUBLE_LIMITS = {
+            1e15, 1e14, 1e13, 1e12, 1e11, 1e10, 1e9, 1e8, 1e7, 1e6, 1e5, 1e4, 1e3, 1e2, 1e1, 1e0
+    };
+
+    /**
+     * Half of the last printed digit by the number of fraction digits, see {@link #printPlainDouble(double, ThreadFormat, char[], boolean)}
+     */
+    private static final double[] HALF_UNITS = {
+            5e-1, 5e-2, 5e-3, 5e-4, 5e-5, 5e-6, 5e-7, 5e-8, 5e-9, 5e-10, 5e-11, 5e-12, 5e-13, 5e-14, 5e-15, 5e-16
+    };
+
+    /**
+     * The most formats cached for all threads and for each thread, the caches are cleared when full
+     */
+    public static final int MAX_CACHED_FORMATS = 256;
+
+    private static final ConcurrentMap<PrototypeKey, NumberFormat> PROTOTYPES = new ConcurrentHashMap<PrototypeKey, NumberFormat>();
+
+    private static final ThreadLocal<ThreadFormats> THREAD_FORMATS = new ThreadLocal<ThreadFormats>() {
+        @Override
+        protected ThreadFormats initialValue() {
+            return new ThreadFormats();
+        }
+    };
+
+    private volatile boolean lenient = false;
+    private volatile FormatSpec spec = FormatSpec.DEFAULT;
+    private final boolean immutable;
 
     public AbstractNumberFormatter() {
+        this.immutable = false;
     }
 
     public AbstractNumberFormatter(String pattern) {
-        this.pattern = pattern;
+        this.spec = new FormatSpec(pattern, FormatSpec.FROM_PATTERN, false);
+        this.immutable = false;
+    }
+
+    /**
+     * Creates an immutable formatter
+     */
+    AbstractNumberFormatter(NumberFormatterBuilder builder) {
+        this.spec = new FormatSpec(builder.getPattern(),
+                builder.getMaximumFractionDigits() < 0 ? FormatSpec.FROM_PATTERN : builder.getMaximumFractionDigits(),
+                builder.isParseIntegerOnly());
+        this.lenient = builder.isLenient();
+        this.immutable = true;
+    }
+
+    /**
+     * @return whether the formatter was created by {@link NumberFormatterBuilder} and its settings cannot be changed
+     */
+    public boolean isImmutable() {
+        return immutable;
     }
 
     public String print(Number number,
                         Locale locale) {
-        return getNumberFormat(locale).format(number);
+        if (number instanceof Double) {
+            return printDouble(number.doubleValue(), locale);
+        }
+        return getThreadNumberFormat(locale).format(number);
     }
 
     public String print(Number number) {
         return print(number, resolveLocale());
     }
 
+    /**
+     * Appends the number formatted as by {@link #print(Number, Locale)}.
+     * Unless the pattern has a prefix, suffix, multiplier or fraction digits, the digits
+     * are written directly with the grouping of the locale (from the symbols cached with the format),
+     * without creating any string.
+     */
+    public void printTo(Appendable out,
+                        long number,
+                        Locale locale) throws IOException {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (threadFormat.plainLongs) {
+            char[] buffer = threadFormat.buffer;
+            int start = printPlainLong(number, threadFormat, buffer);
+            append(out, buffer, start, buffer.length);
+            return;
+        }
+        StringBuffer formatted = threadFormat.clearFormatBuffer();
+        threadFormat.format.format(number, formatted, threadFormat.fieldPosition);
+        appendFormatted(out, threadFormat);
+    }
+
+    public void printTo(Appendable out,
+                        long number) throws IOException {
+        printTo(out, number, resolveLocale());
+    }
+
+    /**
+     * Appends the number formatted as by {@link #print(Number, Locale)}.
+     * Unlike {@link #printTo(Appendable, long, Locale)}, this is not free of allocations:
+     * only doubles of plain patterns (see the class description) are written directly,
+     * all others are formatted by the <code>DecimalFormat</code> of the thread, which creates
+     * temporary objects, into a <code>StringBuffer</code> reused by the thread.
+     */
+    public void printTo(Appendable out,
+                        double number,
+                        Locale locale) throws IOException {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (threadFormat.plainDoubles) {
+            char[] buffer = threadFormat.buffer;
+            int start = printPlainDouble(number, threadFormat, buffer, false);
+            if (start != NOT_PLAIN_DOUBLE) {
+                append(out, buffer, start, buffer.length);
+                return;
+            }
+        }
+        StringBuffer formatted = threadFormat.clearFormatBuffer();
+        threadFormat.format.format(number, formatted, threadFormat.fieldPosition);
+        appendFormatted(out, threadFormat);
+    }
+
+    public void printTo(Appendable out,
+                        double number) throws IOException {
+        printTo(out, number, resolveLocale());
+    }
+
+    /**
+     * Same as {@link #print(Number, Locale)}, rounded half-even to the maximum fraction digits
+     */
+    protected String printDouble(double number,
+                                 Locale locale) {
+        return printDouble(number, locale, false);
+    }
+
+    /**
+     * @param asFormatDouble whether to print the same as {@link NumberFormat#format(double)}
+     *                       rather than {@link NumberFormat#format(Object)}, the two differ in rare cases
+     *                       (see {@link #printPlainDouble(double, ThreadFormat, char[], boolean)})
+     */
+    String printDouble(double number,
+                       Locale locale,
+                       boolean asFormatDouble) {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (threadFormat.plainDoubles) {
+            char[] buffer = threadFormat.buffer;
+            int start = printPlainDouble(number, threadFormat, buffer, asFormatDouble);
+            if (start != NOT_PLAIN_DOUBLE) {
+                return new String(buffer, start, buffer.length - start);
+            }
+        }
+        if (asFormatDouble) {
+            return threadFormat.format.format(number);
+        }
+        StringBuffer formatted = threadFormat.clearFormatBuffer();
+        return threadFormat.format.format(number, formatted, threadFormat.fieldPosition).toString();
+    }
+
+    /**
+     * Writes the digits to the end of the buffer.
+     *
+     * @return the index of the first character
+     */
+    private static int printPlainLong(long number,
+                                      ThreadFormat threadFormat,
+                                      char[] buffer) {
+        // Negative, so that Long.MIN_VALUE needs no special case
+        return printInteger(number < 0 ? number : -number, number < 0, threadFormat, buffer, buffer.length);
+    }
+
+    /**
+     * Writes the number rounded half-even to the maximum fraction digits to the end of the buffer,
+     * with trailing zeros of the fraction removed down to the minimum fraction digits.
+     * The rounding is exact: the binary value of the double multiplied by the power of ten
+     * is computed in 128 bits.
+     * <p>
+     * The format rounds the same, except the doubles nearest to the half of the last digit
+     * for three or more fraction digits (such as 5e-5 for four), which are above the half,
+     * but the format rounds them down. {@link NumberFormat#format(double)} of formats
+     * like <code>#,##0.###</code> takes a different path, which rounds them up.
+     * </p>
+     * <p>
+     * Both are private behaviour of the JDK 8 to 17 implementation: <code>java.text.DigitList</code>
+     * rounds the shortest digits of the JDK-internal <code>FloatingDecimal</code> (those of
+     * {@link Double#toString(double)}, which read "5.0E-5" as exactly a half), while the fast path
+     * <code>DecimalFormat.fastFormat()</code> rounds the binary value. Other JDKs may differ,
+     * Double.toString() itself has changed in JDK 19, so the first use of a plain double format
+     * compares this method with the format of the running JDK on a set of values
+     * (see {@link PlainDoubleCheck}) and if any differs, doubles are always printed by the format.
+     * </p>
+     *
+     * @return the index of the first character or {@link #NOT_PLAIN_DOUBLE} if the number is too large
+     *         (or not finite) to have all its digits printed exactly
+     */
+    private static int printPlainDouble(double number,
+                                        ThreadFormat threadFormat,
+                                        char[] buffer,
+                                        boolean asFormatDouble) {
+        int fractionDigits = threadFormat.maximumFractionDigits;
+        if (!(Math.abs(number) < PLAIN_DOUBLE_LIMITS[fractionDigits])) {
+            return NOT_PLAIN_DOUBLE;
+        }
+        long bits = Double.doubleToRawLongBits(number);
+        int biasedExponent = (int) (bits >>> 52) & 0x7ff;
+        long mantissa = bits & 0xfffffffffffffL;
+        int exponent;
+        if (biasedExponent == 0) {
+            exponent = -1074;
+        } else {
+            mantissa |= 1L << 52;
+            exponent = biasedExponent - 1075;
+        }
+
+        // |number| * 10^fractionDigits, below 10^15
+        long scaled;
+        if (fractionDigits >= 3 && Math.abs(number) == HALF_UNITS[fractionDigits]
+                && !(asFormatDouble && threadFormat.formatDoubleFastPath)) {
+            // The format reads the digits of "5.0E-n" as "50" and never rounds them up
+            scaled = 0;
+        } else if (exponent >= 0) {
+            scaled = (mantissa << exponent) * POWERS_OF_TEN[fractionDigits];
+        } else {
+            scaled = scaleRoundingHalfEven(mantissa, POWERS_OF_TEN[fractionDigits], -exponent);
+        }
+        long integerPart = scaled / POWERS_OF_TEN[fractionDigits];
+        long fraction = scaled % POWERS_OF_TEN[fractionDigits];
+
+        int position = buffer.length;
+        while (fractionDigits > threadFormat.minimumFractionDigits && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        for (int i = 0; i < fractionDigits; i++) {
+            buffer[--position] = (char) (threadFormat.zeroDigit + (int) (fraction % 10));
+            fraction /= 10;
+        }
+        if (fractionDigits > 0) {
+            buffer[--position] = threadFormat.decimalSeparator;
+        }
+        // The format keeps the sign of negative numbers rounded to zero as well as of -0.0
+        return printInteger(-integerPart, bits < 0, threadFormat, buffer, position);
+    }
+
+    /**
+     * @return mantissa * multiplier / 2^shift rounded half-even,
+     *         the mantissa below 2^53 and the multiplier below 2^50
+     */
+    private static long scaleRoundingHalfEven(long mantissa,
+                                              long multiplier,
+                                              int shift) {
+        if (shift > 103) {
+            // The product is below 2^103, so less than a half
+            return 0;
+        }
+        long low = mantissa * multiplier;
+        long high = multiplyHigh(mantissa, multiplier);
+        long quotient;
+        int remainderComparedToHalf;
+        if (shift < 64) {
+            quotient = (high << (64 - shift)) | (low >>> shift);
+            long remainder = low & ((1L << shift) - 1);
+            remainderComparedToHalf = Long.compare(remainder, 1L << (shift - 1));
+        } else {
+            int highShift = shift - 64;
+            quotient = high >>> highShift;
+            long remainderHigh = high & ((1L << highShift) - 1);
+            if (highShift == 0) {
+                remainderComparedToHalf = Long.compare(low + Long.MIN_VALUE, 0);
+            } else if (remainderHigh != 1L << (highShift - 1)) {
+                remainderComparedToHalf = Long.compare(remainderHigh, 1L << (highShift - 1));
+            } else {
+                remainderComparedToHalf = (low == 0 ? 0 : 1);
+            }
+        }
+        if (remainderComparedToHalf > 0 || (remainderComparedToHalf == 0 && (quotient & 1) != 0)) {
+            quotient++;
+        }
+        return quotient;
+    }
+
+    /**
+     * @return the upper 64 bits of the 128-bit product of two non-negative numbers
+     */
+    private static long multiplyHigh(long x,
+                                     long y) {
+        long x1 = x >>> 32;
+        long x0 = x & 0xffffffffL;
+        long y1 = y >>> 32;
+        long y0 = y & 0xffffffffL;
+        long carry = ((x0 * y0) >>> 32) + ((x1 * y0) & 0xffffffffL) + ((x0 * y1) & 0xffffffffL);
+        return x1 * y1 + ((x1 * y0) >>> 32) + ((x0 * y1) >>> 32) + (carry >>> 32);
+    }
+
+    /**
+     * Writes the digits of the integer to the buffer, ending before the position.
+     *
+     * @param negativeMagnitude the magnitude of the integer negated
+     * @return the index of the first character
+     */
+    private static int printInteger(long negativeMagnitude,
+                                    boolean negative,
+                                    ThreadFormat threadFormat,
+                                    char[] buffer,
+                                    int position) {
+        long remaining = negativeMagnitude;
+        int digitCount = 0;
+        do {
+            if (threadFormat.groupingUsed && digitCount > 0 && digitCount % threadFormat.groupingSize == 0) {
+                buffer[--position] = threadFormat.groupingSeparator;
+            }
+            buffer[--position] = (char) (threadFormat.zeroDigit - (int) (remaining % 10));
+            remaining /= 10;
+            digitCount++;
+        } while (remaining != 0 || digitCount < threadFormat.minimumIntegerDigits);
+        if (negative) {
+            buffer[--position] = threadFormat.minusSign;
+        }
+        return position;
+    }
+
+    private static void appendFormatted(Appendable out,
+                                        ThreadFormat threadFormat) throws IOException {
+        StringBuffer formatted = threadFormat.formatBuffer;
+        int length = formatted.length();
+        char[] buffer = threadFormat.buffer;
+        for (int start = 0; start < length; start += buffer.length) {
+            int end = Math.min(length, start + buffer.length);
+            formatted.getChars(start, end, buffer, 0);
+            append(out, buffer, 0, end - start);
+        }
+    }
+
+    private static void append(Appendable out,
+                               char[] chars,
+                               int start,
+                               int end) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, start, end - start);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, start, end - start);
+        } else if (out instanceof StringBuffer) {
+            ((StringBuffer) out).append(chars, start, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                out.append(chars[i]);
+            }
+        }
+    }
+
     public Number parse(String text,
                         Locale locale) {
-        NumberFormat format = getNumberFormat(locale);
-        ParsePosition position = new ParsePosition(0);
+        return parseNumber(text, locale);
+    }
+
+    private Number parseNumber(String text,
+                               Locale locale) {
+        NumberFormat format = getThreadFormat(locale).format;
+        ParsePosition position = THREAD_FORMATS.get().parsePosition;
+        position.setIndex(0);
+        position.setErrorIndex(-1);
         Number number = format.parse(text, position);
         if (position.getErrorIndex() != -1) {
             throw new NumberFormatException("Invalid number " + text + " at position " + position.getIndex());
@@ -46,40 +445,618 @@ public class AbstractNumberFormatter {
         return parse(text, resolveLocale());
     }
 
+    /**
+     * Parses the text as by {@link #parse(String, Locale)} and returns the <code>long</code> value
+     * of the number. Text consisting just of an optional minus sign and ASCII digits,
+     * possibly with grouping separators between them, is parsed directly, without
+     * a {@link NumberFormat} and without allocating anything. Anything else
+     * (and a pattern with a prefix, suffix or multiplier) is parsed by the {@link NumberFormat}.
+     */
+    protected long parseLongValue(String text,
+                                  Locale locale) {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (threadFormat.plainIntegers) {
+            long value = parsePlainInteger(text, 0, text.length(), threadFormat);
+            if (value != NOT_PLAIN_INTEGER) {
+                return value;
+            }
+        }
+        return parseNumber(text, locale).longValue();
+    }
+
+    /**
+     * Parses the characters from start to end if they are a plain integer (see {@link #parseLongValue(String, Locale)}).
+     *
+     * @return the value or {@link #NOT_PLAIN_INTEGER} if the text is not a plain integer
+     *         or the pattern is not plain
+     */
+    long parsePlainLong(CharSequence text,
+                        int start,
+                        int end,
+                        Locale locale) {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (!threadFormat.plainIntegers) {
+            return NOT_PLAIN_INTEGER;
+        }
+        return parsePlainInteger(text, start, end, threadFormat);
+    }
+
+    /**
+     * Parses the characters from start to end if they are a plain decimal number (an optional minus sign,
+     * digits with grouping separators between them, optionally followed by the decimal separator and digits)
+     * with at most 15 significant digits. Such numbers are converted exactly, by one division
+     * of two doubles, giving the same value as the {@link NumberFormat}.
+     *
+     * @return the value or {@link #NOT_PLAIN_DECIMAL} if the text is not a plain decimal number
+     *         or the pattern is not plain
+     */
+    double parsePlainDouble(CharSequence text,
+                            int start,
+                            int end,
+                            Locale locale) {
+        ThreadFormat threadFormat = getThreadFormat(locale);
+        if (!threadFormat.plainDecimals) {
+            return NOT_PLAIN_DECIMAL;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && text.charAt(i) == threadFormat.minusSign) {
+            negative = true;
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = -1;
+        boolean previousIsDigit = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= POWERS_OF_TEN[MAX_PLAIN_FRACTION_DIGITS - 1] || fractionDigits == DOUBLE_POWERS_OF_TEN.length - 1) {
+                    return NOT_PLAIN_DECIMAL;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                previousIsDigit = true;
+            } else if (threadFormat.groupingUsed && c == threadFormat.groupingSeparator
+                    && previousIsDigit && fractionDigits < 0 && i + 1 < end) {
+                previousIsDigit = false;
+            } else if (c == threadFormat.decimalSeparator && previousIsDigit && fractionDigits < 0 && i + 1 < end) {
+                fractionDigits = 0;
+                previousIsDigit = false;
+            } else {
+                return NOT_PLAIN_DECIMAL;
+            }
+        }
+        if (!previousIsDigit) {
+            return NOT_PLAIN_DECIMAL;
+        }
+        double value = (fractionDigits > 0 ? mantissa / DOUBLE_POWERS_OF_TEN[fractionDigits] : (double) mantissa);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the whole text by the {@link NumberFormat}, without throwing any exception.
+     *
+     * @return the number or <code>null</code> if the text is not a number or only starts with one
+     */
+    Number parseWhole(String text,
+                      Locale locale) {
+        NumberFormat format = getThreadFormat(locale).format;
+        ParsePosition position = THREAD_FORMATS.get().parsePosition;
+        position.setIndex(0);
+        position.setErrorIndex(-1);
+        Number number = format.parse(text, position);
+        if (position.getErrorIndex() != -1 || position.getIndex() != text.length()) {
+            return null;
+        }
+        return number;
+    }
+
+    /**
+     * @return the negative prefix of the format, such as "-"
+     */
+    String getNegativePrefix(Locale locale) {
+        NumberFormat format = getThreadFormat(locale).format;
+        return (format instanceof DecimalFormat ? ((DecimalFormat) format).getNegativePrefix() : "-");
+    }
+
+    /**
+     * @return the value or {@link #NOT_PLAIN_INTEGER} if the text is not a plain integer
+     *         (or it is {@link Long#MIN_VALUE}, which is then parsed by the {@link NumberFormat})
+     */
+    private static long parsePlainInteger(CharSequence text,
+                                          int start,
+                                          int end,
+                                          ThreadFormat threadFormat) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && text.charAt(i) == threadFormat.minusSign) {
+            negative = true;
+            i++;
+        }
+        if (i == end) {
+            return NOT_PLAIN_INTEGER;
+        }
+        // Accumulated negatively, as in Long.parseLong()
+        long result = 0;
+        boolean previousIsDigit = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (result < Long.MIN_VALUE / 10) {
+                    return NOT_PLAIN_INTEGER;
+                }
+                result *= 10;
+                if (result < Long.MIN_VALUE + digit) {
+                    return NOT_PLAIN_INTEGER;
+                }
+                result -= digit;
+                previousIsDigit = true;
+            } else if (threadFormat.groupingUsed && c == threadFormat.groupingSeparator
+                    && previousIsDigit && i + 1 < end) {
+                previousIsDigit = false;
+            } else {
+                return NOT_PLAIN_INTEGER;
+            }
+        }
+        if (!previousIsDigit) {
+            return NOT_PLAIN_INTEGER;
+        }
+        return negative ? result : -result;
+    }
+
     public void setLenient(boolean newValue) {
+        checkMutable();
         lenient = newValue;
     }
 
+    /**
+     * @return a new format, which can be modified by the caller
+     */
     public NumberFormat getNumberFormat(java.util.Locale locale) {
+        return (NumberFormat) getPrototype(locale, this.spec).clone();
+    }
+
+    /**
+     * @return the format of the current thread, it must not be modified
+     */
+    private NumberFormat getThreadNumberFormat(Locale locale) {
+        return getThreadFormat(locale).format;
+    }
+
+    private ThreadFormat getThreadFormat(Locale locale) {
+        FormatSpec currentSpec = this.spec;
+        ThreadFormats threadFormats = THREAD_FORMATS.get();
+        if (threadFormats.lastSpec == currentSpec && threadFormats.lastLocale == locale) {
+            return threadFormats.lastFormat;
+        }
+        Map<Locale, ThreadFormat> formats = threadFormats.getFormats(currentSpec);
+        ThreadFormat threadFormat = formats.get(locale);
+        if (threadFormat == null) {
+            threadFormat = new ThreadFormat((NumberFormat) getPrototype(locale, currentSpec).clone());
+            if (threadFormats.formatCount >= MAX_CACHED_FORMATS) {
+                threadFormats.clear();
+                formats = threadFormats.getFormats(currentSpec);
+            }
+            formats.put(locale, threadFormat);
+            threadFormats.formatCount++;
+        }
+        threadFormats.lastSpec = currentSpec;
+        threadFormats.lastLocale = locale;
+        threadFormats.lastFormat = threadFormat;
+        return threadFormat;
+    }
+
+    private static NumberFormat getPrototype(Locale locale, FormatSpec spec) {
+        PrototypeKey key = new PrototypeKey(locale, spec);
+        NumberFormat prototype = PROTOTYPES.get(key);
+        if (prototype == null) {
+            prototype = createNumberFormat(locale, spec);
+            if (PROTOTYPES.size() >= MAX_CACHED_FORMATS) {
+                PROTOTYPES.clear();
+            }
+            NumberFormat existing = PROTOTYPES.putIfAbsent(key, prototype);
+            if (existing != null) {
+                prototype = existing;
+            }
+        }
+        return prototype;
+    }
+
+    private static NumberFormat createNumberFormat(Locale locale, FormatSpec spec) {
         NumberFormat format = NumberFormat.getInstance(locale);
         if (!(format instanceof DecimalFormat)) {
-            if (this.pattern != null) {
+            if (spec.pattern != null) {
                 throw new IllegalStateException("Cannot support pattern for non-DecimalFormat: " + format);
             }
-            return format;
+        } else {
+            DecimalFormat decimalFormat = (DecimalFormat) format;
+            decimalFormat.setParseBigDecimal(true);
+            if (spec.pattern != null) {
+                decimalFormat.applyPattern(spec.pattern);
+            }
         }
-        DecimalFormat decimalFormat = (DecimalFormat) format;
-        decimalFormat.setParseBigDecimal(true);
-        if (this.pattern != null) {
-            decimalFormat.applyPattern(this.pattern);
+        if (spec.maximumFractionDigits != FormatSpec.FROM_PATTERN) {
+            format.setMaximumFractionDigits(spec.maximumFractionDigits);
         }
-        return decimalFormat;
+        format.setParseIntegerOnly(spec.parseIntegerOnly);
+        return format;
     }
 
     public void setPattern(java.lang.String newValue) {
-        this.pattern = newValue;
+        checkMutable();
+        this.spec = new FormatSpec(newValue, spec.maximumFractionDigits, spec.parseIntegerOnly);
+    }
+
+    /**
+     * Overrides the maximum fraction digits of the pattern (or of the locale),
+     * as {@link NumberFormat#setMaximumFractionDigits(int)} does.
+     */
+    public void setMaximumFractionDigits(int newValue) {
+        checkMutable();
+        this.spec = new FormatSpec(spec.pattern, Math.max(0, newValue), spec.parseIntegerOnly);
+    }
+
+    /**
+     * @param newValue whether parsing stops at the decimal separator,
+     *                 as by {@link NumberFormat#setParseIntegerOnly(boolean)}
+     */
+    public void setParseIntegerOnly(boolean newValue) {
+        checkMutable();
+        this.spec = new FormatSpec(spec.pattern, spec.maximumFractionDigits, newValue);
+    }
+
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("The formatter is immutable, configure it by NumberFormatterBuilder");
+        }
     }
 
-    private Locale resolveLocale() {
+    /**
+     * Removes the formats cached for the current thread, they are created again on the next use.
+     */
+    public static void clearThreadFormats() {
+        THREAD_FORMATS.remove();
+    }
+
+    /**
+     * @return the locale of Spring's <code>LocaleContextHolder</code> if the context class loader
+     *         of the current thread sees it, or the default locale
+     */
+    protected Locale resolveLocale() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = AbstractNumberFormatter.class.getClassLoader();
+        }
+        MethodHandle getLocaleMethod = (classLoader == null ? null : LocaleContextHolderLookup.getLocaleMethod(classLoader));
+        if (getLocaleMethod == null) {
+            return Locale.getDefault();
+        }
         try {
-            Class<?> localeContextHolderClass = Thread.currentThread().getContextClassLoader().loadClass(
-                    "org.springframework.context.i18n.LocaleContextHolder");
-            Method getLocaleMethod = localeContextHolderClass.getMethod("getLocale");
-            Object locale = getLocaleMethod.invoke(null);
-            return (Locale) locale;
-        } catch (ClassNotFoundException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | ClassCastException ex) {
+            Locale locale = (Locale) getLocaleMethod.invokeExact();
+            return (locale == null ? Locale.getDefault() : locale);
+        } catch (Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
             return Locale.getDefault();
         }
     }
 
+    //-------------------------------------------------------------------------
+
+    /**
+     * Verifies once that {@link #printPlainDouble(double, ThreadFormat, char[], boolean)}
+     * prints the same as <code>DecimalFormat</code> of the running JDK,
+     * both by <code>format(Object)</code> and <code>format(double)</code>.
+     * The values include the halves of the last digit the JDK rounds specially,
+     * halves of other digits and pseudo-random doubles of all magnitudes printed exactly.
+     */
+    private static class PlainDoubleCheck {
+
+        static final boolean PASSED = verify();
+
+        private static boolean verify() {
+            List<Double> values = new ArrayList<Double>();
+            for (double halfUnit : HALF_UNITS) {
+                values.add(halfUnit);
+                values.add(3 * halfUnit);
+                values.add(1 + halfUnit);
+            }
+            Collections.addAll(values, 0.0, -0.0, 0.5, 1.5, 2.5, 0.125, 1.005, 9.995, 0.1 + 0.2, 123456.789, 999999.9995);
+            Random random = new Random(47);
+            for (int i = 0; i < 100; i++) {
+                values.add(random.nextDouble() * DOUBLE_POWERS_OF_TEN[random.nextInt(16)]);
+            }
+            DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.ROOT);
+            char[] buffer = new char[64];
+            for (int fractionDigits = 0; fractionDigits <= MAX_PLAIN_FRACTION_DIGITS; fractionDigits++) {
+                DecimalFormat format = new DecimalFormat("#,##0", symbols);
+                format.setMaximumFractionDigits(fractionDigits);
+                if (!verify(format, values, buffer)) {
+                    return false;
+                }
+            }
+            return verify(new DecimalFormat("#,##0.###", symbols), values, buffer)
+                    && verify(new DecimalFormat("0.00##", symbols), values, buffer);
+        }
+
+        private static boolean verify(DecimalFormat format, List<Double> values, char[] buffer) {
+            ThreadFormat threadFormat = new ThreadFormat(format, false);
+            for (double value : values) {
+                for (double number : new double[] {value, -value}) {
+                    int start = printPlainDouble(number, threadFormat, buffer, false);
+                    if (start != NOT_PLAIN_DOUBLE
+                            && !format.format(number, new StringBuffer(), new FieldPosition(0)).toString()
+                                    .equals(new String(buffer, start, buffer.length - start))) {
+                        return false;
+                    }
+                    start = printPlainDouble(number, threadFormat, buffer, true);
+                    if (start != NOT_PLAIN_DOUBLE
+                            && !format.format(number).equals(new String(buffer, start, buffer.length - start))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Spring's <code>LocaleContextHolder.getLocale()</code> looked up in a class loader.
+     * The last lookup is kept and repeated whenever the class loader differs.
+     * It refers to the class loader and the method weakly, so it does not keep
+     * an undeployed application in memory.
+     */
+    private static class LocaleContextHolderLookup {
+
+        private static volatile LocaleContextHolderLookup last;
+
+        private final WeakReference<ClassLoader> classLoader;
+        private final WeakReference<MethodHandle> getLocaleMethod;
+
+        private LocaleContextHolderLookup(ClassLoader classLoader, MethodHandle getLocaleMethod) {
+            this.classLoader = new WeakReference<ClassLoader>(classLoader);
+            this.getLocaleMethod = (getLocaleMethod == null ? null : new WeakReference<MethodHandle>(getLocaleMethod));
+        }
+
+        /**
+         * @return the method or <code>null</code> if Spring is not available to the class loader
+         */
+        static MethodHandle getLocaleMethod(ClassLoader classLoader) {
+            LocaleContextHolderLookup lookup = last;
+            if (lookup != null && lookup.classLoader.get() == classLoader) {
+                if (lookup.getLocaleMethod == null) {
+                    return null;
+                }
+                MethodHandle method = lookup.getLocaleMethod.get();
+                if (method != null) {
+                    return method;
+                }
+            }
+            MethodHandle method = lookUp(classLoader);
+            last = new LocaleContextHolderLookup(classLoader, method);
+            return method;
+        }
+
+        private static MethodHandle lookUp(ClassLoader classLoader) {
+            try {
+                Class<?> localeContextHolderClass = classLoader.loadClass(
+                        "org.springframework.context.i18n.LocaleContextHolder");
+                return MethodHandles.publicLookup()
+                        .findStatic(localeContextHolderClass, "getLocale", MethodType.methodType(Locale.class));
+            } catch (ClassNotFoundException | LinkageError | IllegalAccessException | NoSuchMethodException ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The configuration of the formats, replaced as a whole when a setter is called
+     */
+    private static class FormatSpec {
+
+        static final int FROM_PATTERN = -1;
+
+        static final FormatSpec DEFAULT = new FormatSpec(null, FROM_PATTERN, false);
+
+        final String pattern;
+        final int maximumFractionDigits;
+        final boolean parseIntegerOnly;
+
+        FormatSpec(String pattern, int maximumFractionDigits, boolean parseIntegerOnly) {
+            this.pattern = pattern;
+            this.maximumFractionDigits = maximumFractionDigits;
+            this.parseIntegerOnly = parseIntegerOnly;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FormatSpec)) {
+                return false;
+            }
+            FormatSpec other = (FormatSpec) obj;
+            return maximumFractionDigits == other.maximumFractionDigits
+                    && parseIntegerOnly == other.parseIntegerOnly
+                    && (pattern == null ? other.pattern == null : pattern.equals(other.pattern));
+        }
+
+        @Override
+        public int hashCode() {
+            return ((pattern == null ? 0 : pattern.hashCode()) * 31 + maximumFractionDigits) * 2 + (parseIntegerOnly ? 1 : 0);
+        }
+    }
+
+    private static class PrototypeKey {
+
+        private final Locale locale;
+        private final FormatSpec spec;
+
+        PrototypeKey(Locale locale, FormatSpec spec) {
+            this.locale = locale;
+            this.spec = spec;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PrototypeKey)) {
+                return false;
+            }
+            PrototypeKey other = (PrototypeKey) obj;
+            return locale.equals(other.locale) && spec.equals(other.spec);
+        }
+
+        @Override
+        public int hashCode() {
+            return locale.hashCode() * 31 + spec.hashCode();
+        }
+    }
+
+    /**
+     * The formats of one thread by spec and locale, and a reusable parse position.
+     * The last used format is remembered, so the repeated calls of one formatter
+     * with one locale skip the map lookups.
+     */
+    private static class ThreadFormats {
+
+        final Map<FormatSpec, Map<Locale, ThreadFormat>> formatsBySpec = new HashMap<FormatSpec, Map<Locale, ThreadFormat>>();
+        final ParsePosition parsePosition = new ParsePosition(0);
+
+        int formatCount;
+        FormatSpec lastSpec;
+        Locale lastLocale;
+        ThreadFormat lastFormat;
+
+        void clear() {
+            formatsBySpec.clear();
+            formatCount = 0;
+            lastSpec = null;
+            lastLocale = null;
+            lastFormat = null;
+        }
+
+        Map<Locale, ThreadFormat> getFormats(FormatSpec spec) {
+            Map<Locale, ThreadFormat> formats = formatsBySpec.get(spec);
+            if (formats == null) {
+                formats = new HashMap<Locale, ThreadFormat>();
+                formatsBySpec.put(spec, formats);
+            }
+            return formats;
+        }
+    }
+
+    /**
+     * A format of one thread, the syntax of the plain integers it parses and prints
+     * (read from its symbols once) and reusable buffers
+     */
+    private static class ThreadFormat {
+
+        final NumberFormat format;
+        final boolean plainIntegers;
+        final boolean plainDecimals;
+        final boolean plainLongs;
+        final boolean plainDoubles;
+        final boolean formatDoubleFastPath;
+        final char minusSign;
+        final char zeroDigit;
+        final char decimalSeparator;
+        final boolean groupingUsed;
+        final char groupingSeparator;
+        final int groupingSize;
+        final int minimumIntegerDigits;
+        final int minimumFractionDigits;
+        final int maximumFractionDigits;
+
+        final char[] buffer = new char[64];
+        final StringBuffer formatBuffer = new StringBuffer(32);
+        final FieldPosition fieldPosition = new FieldPosition(0);
+
+        ThreadFormat(NumberFormat format) {
+            this(format, PlainDoubleCheck.PASSED);
+        }
+
+        /**
+         * @param plainDoublesVerified whether doubles may be printed without the format if the pattern is plain
+         */
+        ThreadFormat(NumberFormat format, boolean plainDoublesVerified) {
+            this.format = format;
+            if (format instanceof DecimalFormat) {
+                DecimalFormat decimalFormat = (DecimalFormat) format;
+                DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+                minusSign = symbols.getMinusSign();
+                zeroDigit = symbols.getZeroDigit();
+                decimalSeparator = symbols.getDecimalSeparator();
+                groupingUsed = decimalFormat.isGroupingUsed();
+                groupingSeparator = symbols.getGroupingSeparator();
+                groupingSize = decimalFormat.getGroupingSize();
+                minimumIntegerDigits = decimalFormat.getMinimumIntegerDigits();
+                minimumFractionDigits = decimalFormat.getMinimumFractionDigits();
+                maximumFractionDigits = decimalFormat.getMaximumFractionDigits();
+                boolean plainAffixes = decimalFormat.getMultiplier() == 1
+                        && decimalFormat.getPositivePrefix().isEmpty()
+                        && decimalFormat.getPositiveSuffix().isEmpty()
+                        && decimalFormat.getNegativePrefix().equals(String.valueOf(minusSign))
+                        && decimalFormat.getNegativeSuffix().isEmpty();
+                // Anything else changes how "-123" or "1,234" is parsed
+                plainIntegers = plainAffixes
+                        && zeroDigit == '0'
+                        && (minusSign < '0' || minusSign > '9')
+                        && (groupingSeparator < '0' || groupingSeparator > '9')
+                        && groupingSeparator != minusSign;
+                // Also anything else changes how "-1,234.5" is parsed
+                plainDecimals = plainIntegers
+                        && !decimalFormat.isParseIntegerOnly()
+                        && (decimalSeparator < '0' || decimalSeparator > '9')
+                        && decimalSeparator != minusSign
+                        && decimalSeparator != groupingSeparator;
+                // Anything else changes how a long is printed
+                plainLongs = plainAffixes
+                        && (groupingSize > 0 || !groupingUsed)
+                        && minimumIntegerDigits <= 20
+                        && decimalFormat.getMaximumIntegerDigits() >= 20
+                        && minimumFractionDigits == 0
+                        && !decimalFormat.isDecimalSeparatorAlwaysShown();
+                // Anything else changes how a double is printed
+                plainDoubles = plainDoublesVerified
+                        && plainAffixes
+                        && (groupingSize > 0 || !groupingUsed)
+                        && minimumIntegerDigits >= 1
+                        && minimumIntegerDigits <= 20
+                        && decimalFormat.getMaximumIntegerDigits() >= 20
+                        && maximumFractionDigits <= MAX_PLAIN_FRACTION_DIGITS
+                        && !decimalFormat.isDecimalSeparatorAlwaysShown()
+                        && decimalFormat.getRoundingMode() == RoundingMode.HALF_EVEN
+                        && decimalFormat.toPattern().indexOf('E') < 0;
+                // The conditions of the fast path of DecimalFormat.format(double)
+                formatDoubleFastPath = groupingUsed
+                        && groupingSize == 3
+                        && minimumIntegerDigits == 1
+                        && decimalFormat.getMaximumIntegerDigits() >= 10
+                        && minimumFractionDigits == 0
+                        && maximumFractionDigits == 3;
+            } else {
+                plainIntegers = false;
+                plainDecimals = false;
+                plainLongs = false;
+                plainDoubles = false;
+                formatDoubleFastPath = false;
+                minusSign = '-';
+                zeroDigit = '0';
+                decimalSeparator = '.';
+                groupingUsed = false;
+                groupingSeparator = ',';
+                groupingSize = 3;
+                minimumIntegerDigits = 1;
+                minimumFractionDigits = 0;
+                maximumFractionDigits = 0;
+            }
+        }
+
+        StringBuffer clearFormatBuffer() {
+            formatBuffer.setLength(0);
+            return formatBuffer;
+        }
+    }
+
 }
@@ -0,0 +1,152 @@
+package net.sevecek.util;
+
+/**
+ * <p>
+ * The outcome of a <code>tryConvert...()</code> method of {@link TextUtils}:
+ * either the converted value or the error code (and its parameter) of the exception
+ * the corresponding <code>convert...()</code> method would throw.
+ * No exception is created for invalid texts, so validating many fields stays cheap.
+ * </p>
+ * <p>
+ * The result is mutable and overwritten by every conversion, so one instance
+ * can be reused for all fields of a form. It must not be shared by threads.
+ * </p>
+ */
+public class ConversionResult {
+
+    private boolean valid;
+    private boolean integral;
+    private boolean numberFormatError;
+    private long longValue;
+    private double doubleValue;
+    private String errorCode;
+    private Object errorMessageParameter;
+
+
+    public boolean isValid() {
+        return valid;
+    }
+
+
+    /**
+     * @return the value of a valid integer conversion
+     * @throws IllegalStateException if the conversion failed or was not an integer one
+     */
+    public int getIntValue() {
+        checkIntegral();
+        return (int) longValue;
+    }
+
+
+    /**
+     * @return the value of a valid integer conversion
+     * @throws IllegalStateException if the conversion failed or was not an integer one
+     */
+    public long getLongValue() {
+        checkIntegral();
+        return longValue;
+    }
+
+
+    /**
+     * @return the value of a valid conversion (integer conversions included)
+     */
+    public double getDoubleValue() {
+        checkValid();
+        return doubleValue;
+    }
+
+
+    /**
+     * @return the error code of an invalid conversion, such as <code>Text_{0}_cannot_be_converted_to_a_number</code>,
+     *         <code>null</code> for a valid one
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+
+    /**
+     * @return the parameters of the error code, created on every call
+     */
+    public Object[] getErrorMessageParameters() {
+        return valid ? new Object[0] : new Object[] {errorMessageParameter};
+    }
+
+
+    /**
+     * @return the exception the <code>convert...()</code> method would throw
+     */
+    public ApplicationPublicException toException() {
+        if (valid) {
+            throw new IllegalStateException("The conversion is valid");
+        }
+        if (numberFormatError) {
+            String text = (String) errorMessageParameter;
+            NumberFormatException cause = new NumberFormatException(
+                    text == null ? "null" : "For input string: \"" + text + "\"");
+            return new ApplicationPublicException(cause, errorCode, errorMessageParameter);
+        }
+        return new ApplicationPublicException(errorCode, errorMessageParameter);
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    void setLong(long value) {
+        valid = true;
+        integral = true;
+        numberFormatError = false;
+        longValue = value;
+        doubleValue = value;
+        errorCode = null;
+        errorMessageParameter = null;
+    }
+
+
+    void setDouble(double value) {
+        valid = true;
+        integral = false;
+        numberFormatError = false;
+        longValue = 0;
+        doubleValue = value;
+        errorCode = null;
+        errorMessageParameter = null;
+    }
+
+
+    void setError(String errorCode, Object errorMessageParameter) {
+        valid = false;
+        integral = false;
+        numberFormatError = false;
+        longValue = 0;
+        doubleValue = 0;
+        this.errorCode = errorCode;
+        this.errorMessageParameter = errorMessageParameter;
+    }
+
+
+    /**
+     * Same as {@link #setError(String, Object)} for a text which is not a number,
+     * the exception then has the {@link NumberFormatException} the parsing would throw as its cause.
+     */
+    void setNumberFormatError(String errorCode, String text) {
+        setError(errorCode, text);
+        numberFormatError = true;
+    }
+
+
+    private void checkValid() {
+        if (!valid) {
+            throw new IllegalStateException("The conversion failed with " + errorCode);
+        }
+    }
+
+
+    private void checkIntegral() {
+        checkValid();
+        if (!integral) {
+            throw new IllegalStateException("The conversion was not an integer one");
+        }
+    }
+}
@@ -2,7 +2,7 @@ package net.sevecek.util;
 
 import java.util.*;
 
-public class DoubleFormatter extends AbstractNumberFormatter {
+public class DoubleFormatter extends AbstractNumberFormatter implements ReadOnlyDoubleFormatter {
 
     public DoubleFormatter() {
     }
@@ -11,6 +11,10 @@ public class DoubleFormatter extends AbstractNumberFormatter {
         super(pattern);
     }
 
+    DoubleFormatter(NumberFormatterBuilder builder) {
+        super(builder);
+    }
+
     public String print(Double number,
                         Locale locale) {
         return super.print(number, locale);
@@ -20,6 +24,19 @@ public class DoubleFormatter extends AbstractNumberFormatter {
         return super.print(number);
     }
 
+    /**
+     * Same as {@link #print(Double, Locale)}, but doubles of plain patterns with up to 15 fraction digits
+     * and 15 significant digits are printed directly from the symbols of the locale.
+     */
+    public String print(double number,
+                        Locale locale) {
+        return printDouble(number, locale);
+    }
+
+    public String print(double number) {
+        return print(number, resolveLocale());
+    }
+
     @Override
     public Double parse(String text,
                         Locale locale) {
@@ -2,7 +2,7 @@ package net.sevecek.util;
 
 import java.util.*;
 
-public class IntegerFormatter extends AbstractNumberFormatter {
+public class IntegerFormatter extends AbstractNumberFormatter implements ReadOnlyIntegerFormatter {
 
     public IntegerFormatter() {
     }
@@ -11,6 +11,10 @@ public class IntegerFormatter extends AbstractNumberFormatter {
         super(pattern);
     }
 
+    IntegerFormatter(NumberFormatterBuilder builder) {
+        super(builder);
+    }
+
     public String print(Integer number,
                         Locale locale) {
         return super.print(number, locale);
@@ -20,14 +24,27 @@ public class IntegerFormatter extends AbstractNumberFormatter {
         return super.print(number);
     }
 
+    /**
+     * Same as {@link #parse(String, Locale)}, but plain integers (an optional minus sign, digits
+     * and grouping separators) are parsed directly to <code>int</code>, without a {@link java.text.NumberFormat}.
+     */
+    public int parseInt(String text,
+                        Locale locale) {
+        return (int) parseLongValue(text, locale);
+    }
+
+    public int parseInt(String text) {
+        return parseInt(text, resolveLocale());
+    }
+
     @Override
     public Integer parse(String text,
                          Locale locale) {
-        return super.parse(text, locale).intValue();
+        return parseInt(text, locale);
     }
 
     @Override
     public Integer parse(String text) {
-        return super.parse(text).intValue();
+        return parseInt(text);
     }
 }
@@ -2,7 +2,7 @@ package net.sevecek.util;
 
 import java.util.*;
 
-public class LongFormatter extends AbstractNumberFormatter {
+public class LongFormatter extends AbstractNumberFormatter implements ReadOnlyLongFormatter {
 
     public LongFormatter() {
     }
@@ -11,6 +11,10 @@ public class LongFormatter extends AbstractNumberFormatter {
         super(pattern);
     }
 
+    LongFormatter(NumberFormatterBuilder builder) {
+        super(builder);
+    }
+
     public String print(Long number,
                         Locale locale) {
         return super.print(number, locale);
@@ -20,14 +24,27 @@ public class LongFormatter extends AbstractNumberFormatter {
         return super.print(number);
     }
 
+    /**
+     * Same as {@link #parse(String, Locale)}, but plain integers (an optional minus sign, digits
+     * and grouping separators) are parsed directly to <code>long</code>, without a {@link java.text.NumberFormat}.
+     */
+    public long parseLong(String text,
+                          Locale locale) {
+        return parseLongValue(text, locale);
+    }
+
+    public long parseLong(String text) {
+        return parseLong(text, resolveLocale());
+    }
+
     @Override
     public Long parse(String text,
                          Locale locale) {
-        return super.parse(text, locale).longValue();
+        return parseLong(text, locale);
     }
 
     @Override
     public Long parse(String text) {
-        return super.parse(text).longValue();
+        return parseLong(text);
     }
 }
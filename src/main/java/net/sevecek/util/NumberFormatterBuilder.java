@@ -0,0 +1,131 @@
+package net.sevecek.util;
+
+import java.text.*;
+
+/**
+ * <p>
+ * Creates immutable {@link IntegerFormatter}s, {@link LongFormatter}s and {@link DoubleFormatter}s,
+ * which can be shared by all threads, for example as Spring singletons.
+ * They are returned as {@link ReadOnlyIntegerFormatter}, {@link ReadOnlyLongFormatter}
+ * and {@link ReadOnlyDoubleFormatter}, which have no setters:
+ * </p>
+ * <pre>
+ * ReadOnlyLongFormatter formatter = new NumberFormatterBuilder()
+ *         .withPattern("#,##0")
+ *         .withLenient(true)
+ *         .buildLongFormatter();
+ * </pre>
+ * <p>
+ * The setters of the built formatters, if called after a cast, throw {@link UnsupportedOperationException}.
+ * Every thread uses its own clones of the {@link java.text.DecimalFormat}s (one per locale),
+ * created from a shared prototype on the first use, so the formatters need no locking
+ * and the formats are never used by two threads at once.
+ * </p>
+ * <p>
+ * The builder itself is not thread-safe, it can be reused to build more formatters.
+ * </p>
+ */
+public class NumberFormatterBuilder {
+
+    private String pattern;
+    private int maximumFractionDigits = -1;
+    private boolean parseIntegerOnly;
+    private boolean lenient;
+
+
+    /**
+     * @param pattern the pattern of {@link java.text.DecimalFormat}, <code>null</code>
+     *                (the default) means the number format of the locale
+     */
+    public NumberFormatterBuilder withPattern(String pattern) {
+        this.pattern = pattern;
+        return this;
+    }
+
+
+    /**
+     * @param maximumFractionDigits overrides the maximum fraction digits of the pattern,
+     *                              -1 (the default) keeps them
+     */
+    public NumberFormatterBuilder withMaximumFractionDigits(int maximumFractionDigits) {
+        this.maximumFractionDigits = Math.max(-1, maximumFractionDigits);
+        return this;
+    }
+
+
+    /**
+     * @param parseIntegerOnly whether parsing stops at the decimal separator, <code>false</code> by default
+     */
+    public NumberFormatterBuilder withParseIntegerOnly(boolean parseIntegerOnly) {
+        this.parseIntegerOnly = parseIntegerOnly;
+        return this;
+    }
+
+
+    /**
+     * @param lenient whether text after the number is ignored when parsing, <code>false</code> by default
+     */
+    public NumberFormatterBuilder withLenient(boolean lenient) {
+        this.lenient = lenient;
+        return this;
+    }
+
+
+    /**
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public ReadOnlyIntegerFormatter buildIntegerFormatter() {
+        validatePattern();
+        return new IntegerFormatter(this);
+    }
+
+
+    /**
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public ReadOnlyLongFormatter buildLongFormatter() {
+        validatePattern();
+        return new LongFormatter(this);
+    }
+
+
+    /**
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public ReadOnlyDoubleFormatter buildDoubleFormatter() {
+        validatePattern();
+        return new DoubleFormatter(this);
+    }
+
+
+    /**
+     * Fails when the formatter is built rather than on its first use
+     */
+    private void validatePattern() {
+        if (pattern != null) {
+            new DecimalFormat(pattern);
+        }
+    }
+
+    //-------------------------------------------------------------------------
+
+
+    String getPattern() {
+        return pattern;
+    }
+
+
+    int getMaximumFractionDigits() {
+        return maximumFractionDigits;
+    }
+
+
+    boolean isParseIntegerOnly() {
+        return parseIntegerOnly;
+    }
+
+
+    boolean isLenient() {
+        return lenient;
+    }
+}
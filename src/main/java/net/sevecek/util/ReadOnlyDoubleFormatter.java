@@ -0,0 +1,24 @@
+package net.sevecek.util;
+
+import java.util.*;
+
+/**
+ * {@link DoubleFormatter} without the setters, see {@link NumberFormatterBuilder#buildDoubleFormatter()}.
+ */
+public interface ReadOnlyDoubleFormatter extends ReadOnlyNumberFormatter {
+
+    String print(Double number, Locale locale);
+
+    String print(Double number);
+
+    String print(double number, Locale locale);
+
+    String print(double number);
+
+    @Override
+    Double parse(String text, Locale locale);
+
+    @Override
+    Double parse(String text);
+
+}
@@ -0,0 +1,24 @@
+package net.sevecek.util;
+
+import java.util.*;
+
+/**
+ * {@link IntegerFormatter} without the setters, see {@link NumberFormatterBuilder#buildIntegerFormatter()}.
+ */
+public interface ReadOnlyIntegerFormatter extends ReadOnlyNumberFormatter {
+
+    String print(Integer number, Locale locale);
+
+    String print(Integer number);
+
+    int parseInt(String text, Locale locale);
+
+    int parseInt(String text);
+
+    @Override
+    Integer parse(String text, Locale locale);
+
+    @Override
+    Integer parse(String text);
+
+}
@@ -0,0 +1,24 @@
+package net.sevecek.util;
+
+import java.util.*;
+
+/**
+ * {@link LongFormatter} without the setters, see {@link NumberFormatterBuilder#buildLongFormatter()}.
+ */
+public interface ReadOnlyLongFormatter extends ReadOnlyNumberFormatter {
+
+    String print(Long number, Locale locale);
+
+    String print(Long number);
+
+    long parseLong(String text, Locale locale);
+
+    long parseLong(String text);
+
+    @Override
+    Long parse(String text, Locale locale);
+
+    @Override
+    Long parse(String text);
+
+}
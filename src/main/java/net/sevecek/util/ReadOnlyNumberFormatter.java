@@ -0,0 +1,35 @@
+package net.sevecek.util;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * The printing and parsing methods of {@link AbstractNumberFormatter}, without the setters.
+ * {@link NumberFormatterBuilder} returns the formatters it builds by the subinterfaces,
+ * so that code sharing them cannot even try to change their settings.
+ */
+public interface ReadOnlyNumberFormatter {
+
+    String print(Number number, Locale locale);
+
+    String print(Number number);
+
+    void printTo(Appendable out, long number, Locale locale) throws IOException;
+
+    void printTo(Appendable out, long number) throws IOException;
+
+    void printTo(Appendable out, double number, Locale locale) throws IOException;
+
+    void printTo(Appendable out, double number) throws IOException;
+
+    Number parse(String text, Locale locale);
+
+    Number parse(String text);
+
+    /**
+     * @return a new format, which can be modified by the caller
+     */
+    NumberFormat getNumberFormat(Locale locale);
+
+}
@@ -1,10 +1,56 @@
 package net.sevecek.util;
 
+import java.io.*;
+import java.math.*;
+import java.nio.*;
 import java.text.*;
 import java.util.*;
+import java.util.regex.*;
 
 public class TextUtils {
 
+    private static final LongFormatter LONG_FORMATTER = new LongFormatter();
+
+    /**
+     * Parses as the integer instance of {@link NumberFormat}
+     */
+    private static final LongFormatter INTEGER_PARSER = new LongFormatter();
+
+    /**
+     * Parses as the number instance of {@link NumberFormat}
+     */
+    private static final DoubleFormatter NUMBER_PARSER = new DoubleFormatter();
+
+    private static final String LONG_CONVERSION_ERROR = "Text_{0}_cannot_be_converted_to_an_int_or_long";
+    private static final String DOUBLE_CONVERSION_ERROR = "Text_{0}_cannot_be_converted_to_a_number";
+    private static final String TOO_LARGE_ERROR = "Value_{0}_is_too_large";
+    private static final String TOO_SMALL_ERROR = "Value_{0}_is_too_small";
+
+    private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * The syntax accepted by {@link Double#parseDouble(String)} (from the documentation of {@link Double#valueOf(String)})
+     */
+    private static final Pattern JAVA_DOUBLE_REGEX = Pattern.compile(
+            "[+-]?(NaN|Infinity|(((\\p{Digit}+)(\\.)?((\\p{Digit}+)?)([eE][+-]?(\\p{Digit}+))?)|"
+                    + "(\\.((\\p{Digit}+))([eE][+-]?(\\p{Digit}+))?)|"
+                    + "(((0[xX](\\p{XDigit}+)(\\.)?)|(0[xX](\\p{XDigit}+)?(\\.)(\\p{XDigit}+)))[pP][+-]?(\\p{Digit}+)))"
+                    + "[fFdD]?)");
+
+    /**
+     * Formatters of the number format of the locale by the maximum fraction digits
+     */
+    private static final DoubleFormatter[] DOUBLE_FORMATTERS = new DoubleFormatter[16];
+
+    static {
+        for (int i = 0; i < DOUBLE_FORMATTERS.length; i++) {
+            DOUBLE_FORMATTERS[i] = new DoubleFormatter();
+            DOUBLE_FORMATTERS[i].setMaximumFractionDigits(i);
+        }
+        INTEGER_PARSER.setParseIntegerOnly(true);
+    }
+
     public static int convertIntFromStringOnDesktop(String text) {
         return convertIntFromStringOnServer(text, Locale.getDefault());
     }
@@ -28,19 +74,11 @@ public class TextUtils {
 
 
     public static long convertLongFromStringOnServer(String text, Locale language) {
-        text = text.trim();
-        NumberFormat numberFormat = NumberFormat.getIntegerInstance(language);
-        ParsePosition pos = new ParsePosition(0);
-        Number number = numberFormat.parse(text, pos);
-        if (pos.getIndex() != text.length()) {
-            try {
-                long alternativeNumber = Long.parseLong(text);
-                return alternativeNumber;
-            } catch (NumberFormatException e) {
-                throw new ApplicationPublicException(e, "Text_{0}_cannot_be_converted_to_an_int_or_long", text);
-            }
+        ConversionResult result = new ConversionResult();
+        if (!tryConvertLongFromStringOnServer(text, language, result)) {
+            throw result.toException();
         }
-        return number.longValue();
+        return result.getLongValue();
     }
 
 
@@ -50,16 +88,318 @@ public class TextUtils {
 
 
     public static double convertDoubleFromStringOnServer(String text, Locale language) {
-        text = text.trim();
-        NumberFormat numberFormat = NumberFormat.getNumberInstance(language);
-        ParsePosition pos = new ParsePosition(0);
-        Number number = numberFormat.parse(text, pos);
-        if (pos.getIndex() != text.length()) {
-            try {
-                double alternativeNumber = Double.parseDouble(text);
-                return alternativeNumber;
-            } catch (NumberFormatException e) {
-                throw new ApplicationPublicException(e, "Text_{0}_cannot_be_converted_to_a_number", text);
+        ConversionResult result = new ConversionResult();
+        if (!tryConvertDoubleFromStringOnServer(text, language, result)) {
+            throw result.toException();
+        }
+        return result.getDoubleValue();
+    }
+
+
+    /**
+     * Same as {@link #convertIntFromStringOnServer(String, Locale)}, but reports an invalid text
+     * by the error code in the result instead of throwing an exception.
+     *
+     * @param result receives the value or the error, it can be reused for many conversions
+     * @return whether the text is valid
+     */
+    public static boolean tryConvertIntFromStringOnServer(String text, Locale language, ConversionResult result) {
+        if (!tryConvertLongFromStringOnServer(text, language, result)) {
+            return false;
+        }
+        long value = result.getLongValue();
+        if (value > Integer.MAX_VALUE) {
+            result.setError(TOO_LARGE_ERROR, value);
+            return false;
+        }
+        if (value < Integer.MIN_VALUE) {
+            result.setError(TOO_SMALL_ERROR, value);
+            return false;
+        }
+        return true;
+    }
+
+
+    public static boolean tryConvertIntFromStringOnDesktop(String text, ConversionResult result) {
+        return tryConvertIntFromStringOnServer(text, Locale.getDefault(), result);
+    }
+
+
+    /**
+     * Same as {@link #convertLongFromStringOnServer(String, Locale)}, but reports an invalid text
+     * by the error code in the result instead of throwing an exception.
+     * A <code>null</code> or blank text is invalid as well.
+     *
+     * @param result receives the value or the error, it can be reused for many conversions
+     * @return whether the text is valid
+     */
+    public static boolean tryConvertLongFromStringOnServer(String text, Locale language, ConversionResult result) {
+        if (text == null) {
+            result.setNumberFormatError(LONG_CONVERSION_ERROR, null);
+            return false;
+        }
+        return parseLong(text, 0, text.length(), language, result);
+    }
+
+
+    public static boolean tryConvertLongFromStringOnDesktop(String text, ConversionResult result) {
+        return tryConvertLongFromStringOnServer(text, Locale.getDefault(), result);
+    }
+
+
+    /**
+     * Same as {@link #convertDoubleFromStringOnServer(String, Locale)}, but reports an invalid text
+     * by the error code in the result instead of throwing an exception.
+     * A <code>null</code> or blank text is invalid as well.
+     *
+     * @param result receives the value or the error, it can be reused for many conversions
+     * @return whether the text is valid
+     */
+    public static boolean tryConvertDoubleFromStringOnServer(String text, Locale language, ConversionResult result) {
+        if (text == null) {
+            result.setNumberFormatError(DOUBLE_CONVERSION_ERROR, null);
+            return false;
+        }
+        return parseDouble(text, 0, text.length(), language, result);
+    }
+
+
+    public static boolean tryConvertDoubleFromStringOnDesktop(String text, ConversionResult result) {
+        return tryConvertDoubleFromStringOnServer(text, Locale.getDefault(), result);
+    }
+
+
+    /**
+     * Converts a column of texts the same as {@link #convertLongFromStringOnServer(String, Locale)},
+     * but reports the texts which cannot be converted instead of throwing exceptions.
+     * Plain integers (digits with an optional minus sign and grouping separators)
+     * are converted without creating any object.
+     *
+     * @param results  receives the value of each text, 0 for the texts which cannot be converted
+     * @param errors   receives the indexes of the texts which cannot be converted (other bits are left unchanged),
+     *                 iterate them by {@link BitSet#nextSetBit(int)}
+     * @return the number of texts which cannot be converted, including <code>null</code> and blank texts
+     */
+    public static int convertLongsFromStringsOnServer(CharSequence[] texts, long[] results, BitSet errors, Locale language) {
+        ConversionResult result = new ConversionResult();
+        int errorCount = 0;
+        for (int i = 0; i < texts.length; i++) {
+            CharSequence text = texts[i];
+            if (text != null && parseLong(text, 0, text.length(), language, result)) {
+                results[i] = result.getLongValue();
+            } else {
+                results[i] = 0;
+                errors.set(i);
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+
+    /**
+     * Same as {@link #convertLongsFromStringsOnServer(CharSequence[], long[], BitSet, Locale)}
+     * for texts in a character buffer, such as the fields of a CSV file, without creating strings of them.
+     *
+     * @param starts the index of the first character of each text in the buffer
+     * @param ends   the index after the last character of each text in the buffer
+     * @param count  the number of texts
+     */
+    public static int convertLongsFromCharsOnServer(char[] chars, int[] starts, int[] ends, int count,
+                                                    long[] results, BitSet errors, Locale language) {
+        CharSequence text = CharBuffer.wrap(chars);
+        ConversionResult result = new ConversionResult();
+        int errorCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (parseLong(text, starts[i], ends[i], language, result)) {
+                results[i] = result.getLongValue();
+            } else {
+                results[i] = 0;
+                errors.set(i);
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+
+    /**
+     * Converts a column of texts the same as {@link #convertDoubleFromStringOnServer(String, Locale)},
+     * but reports the texts which cannot be converted instead of throwing exceptions.
+     * Plain decimal numbers with up to 15 significant digits are converted without creating any object.
+     *
+     * @param results  receives the value of each text, 0 for the texts which cannot be converted
+     * @param errors   receives the indexes of the texts which cannot be converted (other bits are left unchanged),
+     *                 iterate them by {@link BitSet#nextSetBit(int)}
+     * @return the number of texts which cannot be converted, including <code>null</code> and blank texts
+     */
+    public static int convertDoublesFromStringsOnServer(CharSequence[] texts, double[] results, BitSet errors, Locale language) {
+        ConversionResult result = new ConversionResult();
+        int errorCount = 0;
+        for (int i = 0; i < texts.length; i++) {
+            CharSequence text = texts[i];
+            if (text != null && parseDouble(text, 0, text.length(), language, result)) {
+                results[i] = result.getDoubleValue();
+            } else {
+                results[i] = 0;
+                errors.set(i);
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+
+    /**
+     * Same as {@link #convertDoublesFromStringsOnServer(CharSequence[], double[], BitSet, Locale)}
+     * for texts in a character buffer, such as the fields of a CSV file, without creating strings of them.
+     *
+     * @param starts the index of the first character of each text in the buffer
+     * @param ends   the index after the last character of each text in the buffer
+     * @param count  the number of texts
+     */
+    public static int convertDoublesFromCharsOnServer(char[] chars, int[] starts, int[] ends, int count,
+                                                      double[] results, BitSet errors, Locale language) {
+        CharSequence text = CharBuffer.wrap(chars);
+        ConversionResult result = new ConversionResult();
+        int errorCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (parseDouble(text, starts[i], ends[i], language, result)) {
+                results[i] = result.getDoubleValue();
+            } else {
+                results[i] = 0;
+                errors.set(i);
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+
+    /**
+     * Converts the trimmed characters from start to end as {@link #convertLongFromStringOnServer(String, Locale)},
+     * with the formats cached and without exceptions.
+     *
+     * @return whether the text was converted, the result receives the value or the error
+     */
+    private static boolean parseLong(CharSequence text, int start, int end, Locale language, ConversionResult result) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        long value = INTEGER_PARSER.parsePlainLong(text, start, end, language);
+        if (value != AbstractNumberFormatter.NOT_PLAIN_INTEGER) {
+            result.setLong(value);
+            return true;
+        }
+        String trimmed = text.subSequence(start, end).toString();
+        Number number = INTEGER_PARSER.parseWhole(trimmed, language);
+        if (number != null) {
+            result.setLong(toLongAsIntegerInstance(number));
+            return true;
+        }
+        if (!parseJavaLong(trimmed, result)) {
+            result.setNumberFormatError(LONG_CONVERSION_ERROR, trimmed);
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the value the integer instance of {@link NumberFormat} would return for the parsed number
+     *         (it returns a double, which saturates, for the numbers outside the long range)
+     */
+    private static long toLongAsIntegerInstance(Number number) {
+        if (number instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) number;
+            if (decimal.compareTo(MIN_LONG) < 0 || decimal.compareTo(MAX_LONG) > 0) {
+                return (long) decimal.doubleValue();
+            }
+            return decimal.longValue();
+        }
+        return number.longValue();
+    }
+
+
+    /**
+     * Same as {@link Long#parseLong(String)}, but without the exception.
+     */
+    private static boolean parseJavaLong(String text, ConversionResult result) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = (text.charAt(0) == '-');
+            i = 1;
+        }
+        if (i == length) {
+            return false;
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0 || value < Long.MIN_VALUE / 10) {
+                return false;
+            }
+            value *= 10;
+            if (value < Long.MIN_VALUE + digit) {
+                return false;
+            }
+            value -= digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            return false;
+        }
+        result.setLong(negative ? value : -value);
+        return true;
+    }
+
+
+    /**
+     * Converts the trimmed characters from start to end as {@link #convertDoubleFromStringOnServer(String, Locale)},
+     * with the formats cached and without exceptions.
+     *
+     * @return whether the text was converted, the result receives the value or the error
+     */
+    private static boolean parseDouble(CharSequence text, int start, int end, Locale language, ConversionResult result) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        double value = NUMBER_PARSER.parsePlainDouble(text, start, end, language);
+        if (!Double.isNaN(value)) {
+            result.setDouble(value);
+            return true;
+        }
+        String trimmed = text.subSequence(start, end).toString();
+        Number number = NUMBER_PARSER.parseWhole(trimmed, language);
+        if (number != null) {
+            result.setDouble(toDoubleAsNumberInstance(number, trimmed, language));
+            return true;
+        }
+        if (!JAVA_DOUBLE_REGEX.matcher(trimmed).matches()) {
+            result.setNumberFormatError(DOUBLE_CONVERSION_ERROR, trimmed);
+            return false;
+        }
+        result.setDouble(Double.parseDouble(trimmed));
+        return true;
+    }
+
+
+    /**
+     * @return the value the number instance of {@link NumberFormat} would return for the parsed number
+     *         (its result is -0.0 for negative zero, which BigDecimal cannot represent)
+     */
+    private static double toDoubleAsNumberInstance(Number number, String text, Locale language) {
+        if (number instanceof BigDecimal && ((BigDecimal) number).signum() == 0) {
+            String negativePrefix = NUMBER_PARSER.getNegativePrefix(language);
+            if (!negativePrefix.isEmpty() && text.startsWith(negativePrefix)) {
+                return -0.0;
             }
         }
         return number.doubleValue();
@@ -72,8 +412,7 @@ public class TextUtils {
 
 
     public static String convertIntToStringOnServer(int number, Locale language) {
-        NumberFormat numberFormat = NumberFormat.getIntegerInstance(language);
-        return numberFormat.format(number);
+        return convertLongToStringOnServer(number, language);
     }
 
 
@@ -83,8 +422,24 @@ public class TextUtils {
 
 
     public static String convertLongToStringOnServer(long number, Locale language) {
-        NumberFormat numberFormat = NumberFormat.getIntegerInstance(language);
-        return numberFormat.format(number);
+        StringBuilder result = new StringBuilder(24);
+        try {
+            appendLongOnServer(result, number, language);
+        } catch (IOException e) {
+            // Never thrown by StringBuilder
+            throw ExceptionUtils.rethrowAsUnchecked(e);
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Appends the number formatted as by {@link #convertLongToStringOnServer(long, Locale)},
+     * without creating any string on the way (this holds for longs only,
+     * doubles are printed through a <code>DecimalFormat</code>).
+     */
+    public static void appendLongOnServer(Appendable out, long number, Locale language) throws IOException {
+        LONG_FORMATTER.printTo(out, number, language);
     }
 
 
@@ -94,8 +449,16 @@ public class TextUtils {
 
 
     public static String convertDoubleToStringOnServer(double number, int maxFractionDigits, Locale language) {
-        NumberFormat numberFormat = NumberFormat.getNumberInstance(language);
-        numberFormat.setMaximumFractionDigits(maxFractionDigits);
-        return numberFormat.format(number);
+        return getDoubleFormatter(maxFractionDigits).printDouble(number, language, true);
+    }
+
+
+    private static DoubleFormatter getDoubleFormatter(int maxFractionDigits) {
+        if (maxFractionDigits >= 0 && maxFractionDigits < DOUBLE_FORMATTERS.length) {
+            return DOUBLE_FORMATTERS[maxFractionDigits];
+        }
+        DoubleFormatter formatter = new DoubleFormatter();
+        formatter.setMaximumFractionDigits(maxFractionDigits);
+        return formatter;
     }
 }